@@ -0,0 +1,139 @@
+package com.kumulos.android;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.platform.app.InstrumentationRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Runs the SDK in the benchmark process against a local MockWebServer standing in for every
+ * Kumulos service, so benchmarks exercise the real SDK code paths without touching the network.
+ *
+ * Benchmarks live in the SDK's package so they can reach its package-private internals, the test
+ * APK loads both in the same class loader.
+ */
+final class BenchmarkEnvironment {
+
+    private static final String TAG = "KumulosBenchmark";
+    // Not one of the test runner's own status codes, so reports aren't read as test results
+    private static final int INSTRUMENTATION_STATUS_REPORT = 2;
+
+    static final String API_KEY = "benchmark-api-key";
+    static final String SECRET_KEY = "benchmark-secret-key";
+
+    private static MockWebServer server;
+
+    private BenchmarkEnvironment() {
+    }
+
+    static Application getApplication() {
+        return ApplicationProvider.getApplicationContext();
+    }
+
+    /**
+     * @return builder with every service mapped to the mock server, started on first use
+     */
+    static synchronized KumulosConfig.Builder configBuilder() {
+        if (null == server) {
+            server = new MockWebServer();
+            server.setDispatcher(new OkDispatcher());
+            try {
+                server.start();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to start the mock Kumulos services", e);
+            }
+        }
+
+        String baseUrl = server.url("/").toString();
+        baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+
+        Map<UrlBuilder.Service, String> baseUrlMap = UrlBuilder.defaultMapping();
+        for (UrlBuilder.Service service : UrlBuilder.Service.values()) {
+            baseUrlMap.put(service, baseUrl);
+        }
+
+        return new KumulosConfig.Builder(API_KEY, SECRET_KEY)
+                .setBaseUrlMapping(baseUrlMap);
+    }
+
+    /**
+     * Initializes the SDK with the default config, unless a benchmark already did in this process
+     */
+    static Application initialize() {
+        if (!Kumulos.isInitialized()) {
+            initialize(configBuilder().build());
+        }
+
+        return getApplication();
+    }
+
+    /**
+     * Initializes the SDK on the main thread, as an app's Application.onCreate() would
+     */
+    static void initialize(KumulosConfig config) {
+        Application application = getApplication();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> Kumulos.initialize(application, config));
+    }
+
+    /**
+     * Drops the requests the mock server has recorded, which it otherwise holds onto for the
+     * process lifetime. Call whilst timing is paused.
+     */
+    static void discardRecordedRequests() {
+        if (null == server) {
+            return;
+        }
+
+        try {
+            while (null != server.takeRequest(0, TimeUnit.MILLISECONDS)) {
+                // Keep draining
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reports a measurement other than time alongside the benchmark results, e.g. a payload size
+     */
+    static void reportValue(String key, long value) {
+        Bundle status = new Bundle();
+        status.putLong(key, value);
+        InstrumentationRegistry.getInstrumentation().sendStatus(INSTRUMENTATION_STATUS_REPORT, status);
+
+        Log.i(TAG, key + ": " + value);
+    }
+
+    /**
+     * Waits for work already queued on the DB lane to finish
+     */
+    static void awaitDbLane() throws Exception {
+        Kumulos.executorService.submit(() -> {}).get();
+    }
+
+    static void clearAnalyticsEvents(Context context) {
+        AnalyticsDbHelper.getInstance(context).getWritableDatabase()
+                .delete(AnalyticsContract.AnalyticsEvent.TABLE_NAME, null, null);
+    }
+
+    private static class OkDispatcher extends Dispatcher {
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            return new MockResponse()
+                    .setResponseCode(200)
+                    .setHeader("Content-Type", "application/json")
+                    .setBody("{}");
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.kumulos.android;
+
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Random;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import okio.Buffer;
+
+/**
+ * Encoding a batch of stored events for upload, with & without gzip, over event corpora shaped
+ * like real traffic. Timings are the CPU cost per batch, sizes are reported alongside them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EventBatchCorpusBenchmark {
+
+    private static final int EVENTS_PER_BATCH = AnalyticsUploadHelper.BatchSizer.INITIAL_BATCH_SIZE;
+    private static final String USER_IDENTIFIER = "3f2b8c1e-5d4a-4c6b-9e7f-1a2b3c4d5e6f";
+
+    private static final String[] COLUMNS = {
+            AnalyticsContract.AnalyticsEvent.COL_ID,
+            AnalyticsContract.AnalyticsEvent.COL_HAPPENED_AT_MILLIS,
+            AnalyticsContract.AnalyticsEvent.COL_UUID,
+            AnalyticsContract.AnalyticsEvent.COL_EVENT_TYPE,
+            AnalyticsContract.AnalyticsEvent.COL_PROPERTIES,
+            AnalyticsContract.AnalyticsEvent.COL_USER_IDENTIFIER
+    };
+
+    private static final String[] SCREENS = {"Home", "Search", "ProductList", "ProductDetail", "Basket", "Checkout", "Account"};
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private interface EventSource {
+        String type(int i);
+
+        JSONObject properties(int i, Random random) throws JSONException;
+    }
+
+    /**
+     * SDK lifecycle & messaging events, mostly with small or no properties
+     */
+    private static final EventSource SDK_EVENTS = new EventSource() {
+        private final String[] types = {"k.fg", "k.bg", "k.message.delivered", "k.message.opened", "k.push.deviceRegistered"};
+
+        @Override
+        public String type(int i) {
+            return types[i % types.length];
+        }
+
+        @Override
+        public JSONObject properties(int i, Random random) throws JSONException {
+            switch (type(i)) {
+                case "k.fg":
+                    return null;
+                case "k.bg":
+                    return new JSONObject().put("bgTime", 1614834367000L + random.nextInt(100000));
+                case "k.push.deviceRegistered":
+                    return new JSONObject().put("token", Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong())).put("type", 2);
+                default:
+                    return new JSONObject().put("type", 1).put("id", 1000 + random.nextInt(50));
+            }
+        }
+    };
+
+    /**
+     * App-defined screen & interaction events with a handful of properties each
+     */
+    private static final EventSource SCREEN_EVENTS = new EventSource() {
+        @Override
+        public String type(int i) {
+            return i % 3 == 0 ? "buttonTapped" : "screenViewed";
+        }
+
+        @Override
+        public JSONObject properties(int i, Random random) throws JSONException {
+            JSONObject properties = new JSONObject()
+                    .put("screen", SCREENS[random.nextInt(SCREENS.length)])
+                    .put("previousScreen", SCREENS[random.nextInt(SCREENS.length)])
+                    .put("durationMs", random.nextInt(60000));
+
+            if (i % 3 == 0) {
+                properties.put("button", "addToBasket").put("productId", "SKU-" + (100000 + random.nextInt(5000)));
+            }
+
+            return properties;
+        }
+    };
+
+    /**
+     * Commerce events carrying basket contents, the largest properties apps typically send
+     */
+    private static final EventSource COMMERCE_EVENTS = new EventSource() {
+        @Override
+        public String type(int i) {
+            return i % 4 == 0 ? "purchaseCompleted" : "basketUpdated";
+        }
+
+        @Override
+        public JSONObject properties(int i, Random random) throws JSONException {
+            JSONArray items = new JSONArray();
+            int itemCount = 1 + random.nextInt(6);
+            double total = 0;
+
+            for (int item = 0; item < itemCount; ++item) {
+                double price = (100 + random.nextInt(9900)) / 100.0;
+                total += price;
+                items.put(new JSONObject()
+                        .put("productId", "SKU-" + (100000 + random.nextInt(5000)))
+                        .put("name", "Product " + random.nextInt(5000))
+                        .put("category", SCREENS[random.nextInt(SCREENS.length)])
+                        .put("quantity", 1 + random.nextInt(3))
+                        .put("price", price));
+            }
+
+            return new JSONObject()
+                    .put("orderId", "ORD-" + (900000 + i))
+                    .put("currency", "GBP")
+                    .put("total", total)
+                    .put("items", items);
+        }
+    };
+
+    /**
+     * @return cursor over a batch shaped like the upload query's result, seeded so each run
+     * encodes the same bytes
+     */
+    private static MatrixCursor buildCorpus(EventSource source) throws JSONException {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, EVENTS_PER_BATCH);
+        Random random = new Random(EVENTS_PER_BATCH);
+        long happenedAt = 1614834367000L;
+
+        for (int i = 0; i < EVENTS_PER_BATCH; ++i) {
+            happenedAt += random.nextInt(30000);
+            ContentValues row = AnalyticsContract.buildEventRow(source.type(i), happenedAt, source.properties(i, random), USER_IDENTIFIER);
+
+            cursor.addRow(new Object[]{
+                    i + 1,
+                    row.getAsLong(AnalyticsContract.AnalyticsEvent.COL_HAPPENED_AT_MILLIS),
+                    row.getAsString(AnalyticsContract.AnalyticsEvent.COL_UUID),
+                    row.getAsString(AnalyticsContract.AnalyticsEvent.COL_EVENT_TYPE),
+                    row.getAsString(AnalyticsContract.AnalyticsEvent.COL_PROPERTIES),
+                    row.getAsString(AnalyticsContract.AnalyticsEvent.COL_USER_IDENTIFIER)
+            });
+        }
+
+        return cursor;
+    }
+
+    private void benchmarkEncode(String corpusName, EventSource source, boolean compress) throws JSONException, IOException {
+        MatrixCursor cursor = buildCorpus(source);
+        AnalyticsUploadHelper.EventBatchBody body = new AnalyticsUploadHelper.EventBatchBody(cursor);
+        AnalyticsUploadHelper.GzipRequestBody gzipBody = new AnalyticsUploadHelper.GzipRequestBody(body);
+        Buffer out = new Buffer();
+
+        // One untimed write to report the sizes
+        gzipBody.writeTo(out);
+        out.clear();
+        BenchmarkEnvironment.reportValue(corpusName + "_events", EVENTS_PER_BATCH);
+        BenchmarkEnvironment.reportValue(corpusName + "_bytes", body.getBytesWritten());
+        BenchmarkEnvironment.reportValue(corpusName + "_bytesOnWireGzip", gzipBody.getBytesWritten());
+
+        BenchmarkState state = benchmarkRule.getState();
+
+        while (state.keepRunning()) {
+            if (compress) {
+                gzipBody.writeTo(out);
+            } else {
+                body.writeTo(out);
+            }
+
+            out.clear();
+        }
+
+        cursor.close();
+    }
+
+    @Test
+    public void encodeSdkEvents() throws Exception {
+        benchmarkEncode("sdkEvents", SDK_EVENTS, false);
+    }
+
+    @Test
+    public void encodeSdkEventsGzip() throws Exception {
+        benchmarkEncode("sdkEvents", SDK_EVENTS, true);
+    }
+
+    @Test
+    public void encodeScreenEvents() throws Exception {
+        benchmarkEncode("screenEvents", SCREEN_EVENTS, false);
+    }
+
+    @Test
+    public void encodeScreenEventsGzip() throws Exception {
+        benchmarkEncode("screenEvents", SCREEN_EVENTS, true);
+    }
+
+    @Test
+    public void encodeCommerceEvents() throws Exception {
+        benchmarkEncode("commerceEvents", COMMERCE_EVENTS, false);
+    }
+
+    @Test
+    public void encodeCommerceEventsGzip() throws Exception {
+        benchmarkEncode("commerceEvents", COMMERCE_EVENTS, true);
+    }
+}
@@ -0,0 +1,92 @@
+package com.kumulos.android;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Uploads stored events to the mock events service, from the DB read through to the response
+ */
+@RunWith(AndroidJUnit4.class)
+public class FlushEventsBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Context context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = BenchmarkEnvironment.initialize();
+        BenchmarkEnvironment.awaitDbLane();
+    }
+
+    private void storeEvents(int count) throws Exception {
+        BenchmarkEnvironment.clearAnalyticsEvents(context);
+
+        SQLiteDatabase db = AnalyticsDbHelper.getInstance(context).getWritableDatabase();
+        long happenedAt = System.currentTimeMillis();
+
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; ++i) {
+                JSONObject properties = new JSONObject()
+                        .put("screen", "ProductDetail")
+                        .put("productId", "SKU-" + (100000 + i))
+                        .put("position", i);
+
+                db.insert(AnalyticsContract.AnalyticsEvent.TABLE_NAME, null,
+                        AnalyticsContract.buildEventRow("benchmark.flush", happenedAt + i, properties, "benchmark-user"));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void benchmarkFlush(int eventCount) throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        AnalyticsUploadHelper helper = new AnalyticsUploadHelper();
+
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            storeEvents(eventCount);
+            BenchmarkEnvironment.discardRecordedRequests();
+            state.resumeTiming();
+
+            AnalyticsUploadHelper.Result result = helper.flushEvents(context);
+
+            state.pauseTiming();
+            assertEquals(AnalyticsUploadHelper.Result.SUCCESS, result);
+            // Trimming uploaded batches runs on the DB lane
+            BenchmarkEnvironment.awaitDbLane();
+            state.resumeTiming();
+        }
+    }
+
+    @Test
+    public void flushSingleEvent() throws Exception {
+        benchmarkFlush(1);
+    }
+
+    @Test
+    public void flushOneBatch() throws Exception {
+        benchmarkFlush(AnalyticsUploadHelper.BatchSizer.MIN_BATCH_SIZE);
+    }
+
+    @Test
+    public void flushSeveralBatches() throws Exception {
+        benchmarkFlush(1000);
+    }
+}
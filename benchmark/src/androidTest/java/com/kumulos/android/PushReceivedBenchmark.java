@@ -0,0 +1,67 @@
+package com.kumulos.android;
+
+import android.content.Context;
+
+import com.google.firebase.messaging.RemoteMessage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Handling an FCM push, from the RemoteMessage through to the com.kumulos.push broadcast
+ */
+@RunWith(AndroidJUnit4.class)
+public class PushReceivedBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Context context;
+    private RemoteMessage remoteMessage;
+
+    @Before
+    public void setUp() throws Exception {
+        context = BenchmarkEnvironment.initialize();
+
+        JSONObject data = new JSONObject()
+                .put("k.message", new JSONObject()
+                        .put("type", 1)
+                        .put("data", new JSONObject().put("id", 1234)))
+                .put("k.buttons", new JSONArray()
+                        .put(new JSONObject().put("id", "view").put("text", "View order"))
+                        .put(new JSONObject().put("id", "track").put("text", "Track delivery")))
+                .put("orderId", "ORD-987654");
+
+        JSONObject custom = new JSONObject()
+                .put("u", "https://example.org/orders/987654")
+                .put("a", data);
+
+        remoteMessage = new RemoteMessage.Builder("benchmark@fcm.googleapis.com")
+                .addData("custom", custom.toString())
+                .addData("title", "Your order has shipped")
+                .addData("alert", "Order ORD-987654 is on its way and should arrive tomorrow")
+                .addData("bicon", "https://example.org/images/parcel.png")
+                .addData("sound", "default")
+                .build();
+    }
+
+    @Test
+    public void onMessageReceived() {
+        assertTrue(FirebaseMessageHandler.onMessageReceived(context, remoteMessage));
+        BenchmarkState state = benchmarkRule.getState();
+
+        while (state.keepRunning()) {
+            FirebaseMessageHandler.onMessageReceived(context, remoteMessage);
+        }
+    }
+}
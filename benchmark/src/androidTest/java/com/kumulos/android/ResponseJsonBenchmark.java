@@ -0,0 +1,79 @@
+package com.kumulos.android;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Decoding RPC responses into the maps handed to ResponseHandlers
+ */
+@RunWith(AndroidJUnit4.class)
+public class ResponseJsonBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private String smallResponse;
+    private String largeResponse;
+
+    @Before
+    public void setUp() throws JSONException {
+        smallResponse = buildResponse(1);
+        largeResponse = buildResponse(200);
+    }
+
+    private static String buildResponse(int rowCount) throws JSONException {
+        JSONArray rows = new JSONArray();
+        for (int i = 0; i < rowCount; ++i) {
+            rows.put(new JSONObject()
+                    .put("productId", 1000 + i)
+                    .put("name", "Product " + i)
+                    .put("description", "A reasonably sized description of product " + i + " for a listing screen")
+                    .put("price", 9.99 + i)
+                    .put("tags", new JSONArray().put("sale").put("new"))
+                    .put("timeCreated", "2021-03-04 05:06:07")
+                    .put("timeUpdated", "2021-03-04 05:06:07"));
+        }
+
+        return new JSONObject()
+                .put("responseCode", 1)
+                .put("responseMessage", "Success")
+                .put("payload", rows)
+                .put("requestedMethod", "getProducts")
+                .put("requestedFormat", "json")
+                .put("timestamp", 1614834367)
+                .put("requestReceivedTime", 1614834367.123)
+                .put("maxAllowedRequestTime", 40)
+                .put("requestProcessingTime", 0.0123)
+                .toString();
+    }
+
+    private void benchmarkParse(String json) {
+        assertNotNull(Kumulos.getResponseObjectFromJson(json));
+        BenchmarkState state = benchmarkRule.getState();
+
+        while (state.keepRunning()) {
+            Kumulos.getResponseObjectFromJson(json);
+        }
+    }
+
+    @Test
+    public void parseSmallResponse() {
+        benchmarkParse(smallResponse);
+    }
+
+    @Test
+    public void parseLargeResponse() {
+        benchmarkParse(largeResponse);
+    }
+}
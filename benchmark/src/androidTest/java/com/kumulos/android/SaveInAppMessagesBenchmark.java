@@ -0,0 +1,124 @@
+package com.kumulos.android;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+import java.util.List;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Saves an in-app sync response, from the parsed messages through the DB transaction & inbox
+ * cache update
+ */
+@RunWith(AndroidJUnit4.class)
+public class SaveInAppMessagesBenchmark {
+
+    private static final int MESSAGES_PER_SYNC = 50;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Context context;
+    private String syncResponse;
+
+    @Before
+    public void setUp() throws Exception {
+        context = BenchmarkEnvironment.initialize();
+        syncResponse = buildSyncResponse(MESSAGES_PER_SYNC);
+        clearMessages();
+    }
+
+    private static String buildSyncResponse(int count) throws JSONException {
+        JSONArray messages = new JSONArray();
+
+        for (int i = 0; i < count; ++i) {
+            JSONObject content = new JSONObject()
+                    .put("blocks", new JSONArray()
+                            .put(new JSONObject().put("type", "image").put("imagePath", "/images/spring-sale-" + i + ".png"))
+                            .put(new JSONObject().put("type", "text").put("text", "Spring sale: up to 50% off everything in store, today only"))
+                            .put(new JSONObject().put("type", "button").put("text", "Shop now")
+                                    .put("actions", new JSONArray().put(new JSONObject().put("type", "openUrl").put("data", new JSONObject().put("url", "https://example.org/sale"))))));
+
+            JSONObject message = new JSONObject()
+                    .put("id", i + 1)
+                    .put("presentedWhen", "next-open")
+                    .put("content", content)
+                    .put("data", new JSONObject().put("campaign", "spring-sale").put("variant", i % 3))
+                    .put("badge", JSONObject.NULL)
+                    .put("updatedAt", "2021-03-04T05:06:07Z")
+                    .put("sentAt", "2021-03-04T05:00:00Z")
+                    .put("expiresAt", JSONObject.NULL);
+
+            if (i % 2 == 0) {
+                message.put("inbox", new JSONObject()
+                        .put("title", "Spring sale " + i)
+                        .put("subtitle", "Up to 50% off")
+                        .put("imagePath", "/images/inbox-" + i + ".png"));
+            } else {
+                message.put("inbox", JSONObject.NULL);
+            }
+
+            messages.put(message);
+        }
+
+        return messages.toString();
+    }
+
+    private List<InAppMessage> parseSyncResponse() throws Exception {
+        return InAppMessageStreamParser.parse(new StringReader(syncResponse));
+    }
+
+    private void clearMessages() {
+        InAppDbHelper.getInstance(context).getWritableDatabase()
+                .delete(InAppContract.InAppMessageTable.TABLE_NAME, null, null);
+    }
+
+    @Test
+    public void saveNewMessages() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            clearMessages();
+            List<InAppMessage> messages = parseSyncResponse();
+            state.resumeTiming();
+
+            InAppSaveResult result = new InAppContract.SaveInAppMessagesCallable(context, messages).call();
+
+            state.pauseTiming();
+            assertNotNull(result);
+            state.resumeTiming();
+        }
+    }
+
+    @Test
+    public void saveUnchangedMessages() throws Exception {
+        new InAppContract.SaveInAppMessagesCallable(context, parseSyncResponse()).call();
+        BenchmarkState state = benchmarkRule.getState();
+
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            List<InAppMessage> messages = parseSyncResponse();
+            state.resumeTiming();
+
+            InAppSaveResult result = new InAppContract.SaveInAppMessagesCallable(context, messages).call();
+
+            state.pauseTiming();
+            assertNotNull(result);
+            state.resumeTiming();
+        }
+    }
+}
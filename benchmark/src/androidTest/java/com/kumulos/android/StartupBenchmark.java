@@ -0,0 +1,75 @@
+package com.kumulos.android;
+
+import android.app.Application;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Compares Kumulos.initialize() with & without deferred initialization.
+ *
+ * The SDK initializes once per process, so each run is its own test & the orchestrator starts a
+ * fresh process with cleared app data for it, as on an app's first launch. Reports per run:
+ * - mainThreadMicros: time initialize() blocks the main thread
+ * - readyMicros: time until a background caller can use the SDK, including the deferred part
+ */
+@RunWith(Parameterized.class)
+public class StartupBenchmark {
+
+    private static final int RUNS_PER_MODE = 10;
+
+    @Parameterized.Parameter(0)
+    public boolean deferred;
+
+    @Parameterized.Parameter(1)
+    public int run;
+
+    @Parameterized.Parameters(name = "deferred={0},run={1}")
+    public static Collection<Object[]> parameters() {
+        Collection<Object[]> parameters = new ArrayList<>();
+        for (int run = 0; run < RUNS_PER_MODE; ++run) {
+            parameters.add(new Object[]{false, run});
+            parameters.add(new Object[]{true, run});
+        }
+
+        return parameters;
+    }
+
+    @Test
+    public void initialize() {
+        assumeFalse("Needs a fresh process, run with the test orchestrator", Kumulos.isInitialized());
+
+        KumulosConfig.Builder builder = BenchmarkEnvironment.configBuilder();
+        if (deferred) {
+            builder.enableDeferredInitialization();
+        }
+        KumulosConfig config = builder.build();
+        Application application = BenchmarkEnvironment.getApplication();
+        long[] mainThreadNanos = new long[1];
+
+        long startedAt = System.nanoTime();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            long mainStartedAt = System.nanoTime();
+            Kumulos.initialize(application, config);
+            mainThreadNanos[0] = System.nanoTime() - mainStartedAt;
+        });
+
+        // Waits out deferred initialization, as SDK work on a background thread would
+        assertNotNull(Kumulos.getHttpClient());
+        long readyNanos = System.nanoTime() - startedAt;
+
+        String mode = deferred ? "deferred" : "normal";
+        BenchmarkEnvironment.reportValue(mode + "_mainThreadMicros", TimeUnit.NANOSECONDS.toMicros(mainThreadNanos[0]));
+        BenchmarkEnvironment.reportValue(mode + "_readyMicros", TimeUnit.NANOSECONDS.toMicros(readyNanos));
+    }
+}
@@ -0,0 +1,91 @@
+package com.kumulos.android;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+@RunWith(AndroidJUnit4.class)
+public class TrackEventBenchmark {
+
+    // Matches the event writer's batch threshold, so each round commits one full batch
+    private static final int EVENTS_PER_BATCH = 32;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Context context;
+    private JSONObject properties;
+
+    @Before
+    public void setUp() throws Exception {
+        context = BenchmarkEnvironment.initialize();
+        BenchmarkEnvironment.awaitDbLane();
+        BenchmarkEnvironment.clearAnalyticsEvents(context);
+
+        properties = new JSONObject()
+                .put("screen", "ProductDetail")
+                .put("productId", "SKU-123456")
+                .put("price", 19.99)
+                .put("inStock", true);
+    }
+
+    /**
+     * Cost on the calling thread, which is usually the main thread
+     */
+    @Test
+    public void trackEvent() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        int tracked = 0;
+
+        while (state.keepRunning()) {
+            Kumulos.trackEvent(context, "benchmark.track", properties);
+
+            if (++tracked % EVENTS_PER_BATCH == 0) {
+                // Keeps the writer's ring from overflowing into per-event writes
+                state.pauseTiming();
+                BenchmarkEnvironment.awaitDbLane();
+                state.resumeTiming();
+            }
+        }
+    }
+
+    /**
+     * Tracking a full batch through to its commit on the DB lane
+     */
+    @Test
+    public void trackBatchUntilCommitted() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+
+        while (state.keepRunning()) {
+            for (int i = 0; i < EVENTS_PER_BATCH; ++i) {
+                Kumulos.trackEvent(context, "benchmark.track", properties);
+            }
+
+            BenchmarkEnvironment.awaitDbLane();
+        }
+    }
+
+    @Test
+    public void trackEventWithoutProperties() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        int tracked = 0;
+
+        while (state.keepRunning()) {
+            Kumulos.trackEvent(context, "benchmark.track", null);
+
+            if (++tracked % EVENTS_PER_BATCH == 0) {
+                state.pauseTiming();
+                BenchmarkEnvironment.awaitDbLane();
+                state.resumeTiming();
+            }
+        }
+    }
+}
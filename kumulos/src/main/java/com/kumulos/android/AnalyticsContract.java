@@ -8,9 +8,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
-import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Build;
 import android.os.Bundle;
 
@@ -70,6 +70,124 @@ final class AnalyticsContract {
         static final String COL_EVENT_TYPE = "type";
         static final String COL_PROPERTIES = "properties";
         static final String COL_USER_IDENTIFIER = "user_identifier";
+        static final String COL_PRIORITY = "priority";
+        static final String COL_SIZE_BYTES = "size_bytes";
+        static final String INDEX_PRIORITY = "idx_events_priority";
+    }
+
+    /**
+     * Running totals for the events table, maintained by triggers so the store limits can be
+     * checked without scanning the events
+     */
+    static class EventStoreStats {
+        static final String TABLE_NAME = "event_store_stats";
+        static final String COL_ID = "id";
+        static final String COL_ROW_COUNT = "row_count";
+        static final String COL_BYTE_COUNT = "byte_count";
+        static final String TRIGGER_INSERT = "trg_events_insert_stats";
+        static final String TRIGGER_DELETE = "trg_events_delete_stats";
+    }
+
+    /**
+     * Events with a lower priority are evicted first when the event store exceeds its limits
+     */
+    static final int EVENT_PRIORITY_LOW = 0;
+    static final int EVENT_PRIORITY_NORMAL = 1;
+    static final int EVENT_PRIORITY_CRITICAL = 2;
+
+    static final String[] CRITICAL_EVENT_TYPES = {
+            EVENT_TYPE_ASSOCIATE_USER,
+            EVENT_TYPE_CLEAR_USER_ASSOCIATION,
+            EVENT_TYPE_PUSH_DEVICE_REGISTERED,
+            EVENT_TYPE_PUSH_DEVICE_UNSUBSCRIBED,
+            EVENT_TYPE_PUSH_NOTIFICATION_ENABLEMENT_CHANGED
+    };
+
+    static final String[] LOW_PRIORITY_EVENT_TYPES = {
+            EVENT_TYPE_LOCATION_UPDATED,
+            EVENT_TYPE_ENTERED_BEACON_PROXIMITY
+    };
+
+    private static final String SDK_EVENT_TYPE_PREFIX = "k.";
+    private static final int EVICTION_CHUNK_SIZE = 50;
+
+    static int getEventPriority(@NonNull String eventType) {
+        for (String type : CRITICAL_EVENT_TYPES) {
+            if (type.equals(eventType)) {
+                return EVENT_PRIORITY_CRITICAL;
+            }
+        }
+
+        for (String type : LOW_PRIORITY_EVENT_TYPES) {
+            if (type.equals(eventType)) {
+                return EVENT_PRIORITY_LOW;
+            }
+        }
+
+        // Custom events are the first to go
+        if (!eventType.startsWith(SDK_EVENT_TYPE_PREFIX)) {
+            return EVENT_PRIORITY_LOW;
+        }
+
+        return EVENT_PRIORITY_NORMAL;
+    }
+
+    private static final String EVENT_STORE_STATS_SQL = "SELECT " + EventStoreStats.COL_ROW_COUNT + ", " + EventStoreStats.COL_BYTE_COUNT
+            + " FROM " + EventStoreStats.TABLE_NAME + " WHERE " + EventStoreStats.COL_ID + " = 0";
+
+    /**
+     * Evicts events until the store is within the configured row & byte limits. Lowest priority,
+     * then oldest, events are evicted first using the (priority, id) index.
+     */
+    static void enforceEventStoreLimits(SQLiteDatabase db) {
+        KumulosConfig config = Kumulos.getConfig();
+        if (null == config) {
+            return;
+        }
+
+        long maxRows = config.getMaxStoredEvents();
+        long maxBytes = config.getMaxStoredEventBytes();
+
+        String evictSql = "DELETE FROM " + AnalyticsEvent.TABLE_NAME + " WHERE " + AnalyticsEvent.COL_ID + " IN ("
+                + "SELECT " + AnalyticsEvent.COL_ID + " FROM " + AnalyticsEvent.TABLE_NAME + " INDEXED BY " + AnalyticsEvent.INDEX_PRIORITY
+                + " ORDER BY " + AnalyticsEvent.COL_PRIORITY + " ASC, " + AnalyticsEvent.COL_ID + " ASC LIMIT ?)";
+
+        while (true) {
+            long rows;
+            long bytes;
+
+            try (Cursor c = db.rawQuery(EVENT_STORE_STATS_SQL, null)) {
+                if (!c.moveToFirst()) {
+                    return;
+                }
+                rows = c.getLong(0);
+                bytes = c.getLong(1);
+            }
+
+            if (rows == 0 || (rows <= maxRows && bytes <= maxBytes)) {
+                return;
+            }
+
+            long toEvict = Math.max(rows - maxRows, EVICTION_CHUNK_SIZE);
+            db.execSQL(evictSql, new Object[]{toEvict});
+
+            Kumulos.log("Event store over limits (" + rows + " events, " + bytes + " bytes), evicted up to " + toEvict + " events");
+        }
+    }
+
+    /**
+     * Reports the number of stored events awaiting upload, if metrics are enabled
+     */
+    static void reportEventBacklog(SQLiteDatabase db) {
+        if (!SdkMetrics.isEnabled()) {
+            return;
+        }
+
+        try (Cursor c = db.rawQuery(EVENT_STORE_STATS_SQL, null)) {
+            if (c.moveToFirst()) {
+                SdkMetrics.eventBacklogChanged(c.getLong(0));
+            }
+        }
     }
 
     /**
@@ -98,55 +216,84 @@ final class AnalyticsContract {
 
         @Override
         public void run() {
-            UUID uuid = UUID.randomUUID();
-            String uuidStr = uuid.toString();
-
-            // Record
-            ContentValues values = new ContentValues();
-            values.put(AnalyticsEvent.COL_EVENT_TYPE, this.eventType);
-            values.put(AnalyticsEvent.COL_UUID, uuidStr);
-            values.put(AnalyticsEvent.COL_HAPPENED_AT_MILLIS, this.happenedAt);
-            values.put(AnalyticsEvent.COL_USER_IDENTIFIER, Kumulos.getCurrentUserIdentifier(mContext));
+            ContentValues values = buildEventRow(eventType, happenedAt, properties, Kumulos.getCurrentUserIdentifier(mContext));
 
-            String propsStr = (null == this.properties) ? null : properties.toString();
-            values.put(AnalyticsEvent.COL_PROPERTIES, propsStr);
-
-            try (SQLiteOpenHelper dbHelper = new AnalyticsDbHelper(mContext)) {
-                SQLiteDatabase db = dbHelper.getWritableDatabase();
+            try {
+                long startedAt = SdkMetrics.now();
+                SQLiteDatabase db = AnalyticsDbHelper.getInstance(mContext).getWritableDatabase();
                 db.insertOrThrow(AnalyticsEvent.TABLE_NAME, null, values);
-                Kumulos.log(TAG, "Tracked event " + eventType + " with UUID " + uuidStr);
+                enforceEventStoreLimits(db);
+                SdkMetrics.dbOperation(SdkMetrics.DB_ANALYTICS, "insertEvents", startedAt);
+                reportEventBacklog(db);
+                Kumulos.log(TAG, "Tracked event " + eventType + " with UUID " + values.getAsString(AnalyticsEvent.COL_UUID));
             } catch (SQLiteException e) {
                 e.printStackTrace();
                 return;
             }
 
-            if (immediateFlush) {
+            flushOrScheduleUpload(mContext, immediateFlush);
+        }
+    }
+
+    static ContentValues buildEventRow(@NonNull String eventType, long happenedAt, @Nullable JSONObject properties, String userIdentifier) {
+        String uuid = UUID.randomUUID().toString();
+        String propsStr = (null == properties) ? null : properties.toString();
+
+        ContentValues values = new ContentValues();
+        values.put(AnalyticsEvent.COL_EVENT_TYPE, eventType);
+        values.put(AnalyticsEvent.COL_UUID, uuid);
+        values.put(AnalyticsEvent.COL_HAPPENED_AT_MILLIS, happenedAt);
+        values.put(AnalyticsEvent.COL_USER_IDENTIFIER, userIdentifier);
+        values.put(AnalyticsEvent.COL_PROPERTIES, propsStr);
+        values.put(AnalyticsEvent.COL_PRIORITY, getEventPriority(eventType));
+
+        // Approximate stored size, good enough for enforcing the store limit
+        long size = eventType.length() + uuid.length()
+                + (null == propsStr ? 0 : propsStr.length())
+                + (null == userIdentifier ? 0 : userIdentifier.length());
+        values.put(AnalyticsEvent.COL_SIZE_BYTES, size);
+
+        return values;
+    }
+
+    /**
+     * Uploads stored events straight away if requested, otherwise (or on failure) schedules a
+     * background sync
+     */
+    static void flushOrScheduleUpload(Context context, boolean immediateFlush) {
+        if (immediateFlush) {
+            Kumulos.networkExecutor.submit(() -> {
                 AnalyticsUploadHelper helper = new AnalyticsUploadHelper();
-                AnalyticsUploadHelper.Result result = helper.flushEvents(mContext);
+                AnalyticsUploadHelper.Result result = helper.flushEvents(context);
 
-                if (result == AnalyticsUploadHelper.Result.SUCCESS) {
-                    return;
+                // On failures, fall back to scheduling a background sync
+                if (result != AnalyticsUploadHelper.Result.SUCCESS) {
+                    Kumulos.schedulingExecutor.submit(() -> scheduleUpload(context));
                 }
-                // On failures, fall through to scheduling a background sync
-            }
+            });
+            return;
+        }
 
-            // Schedule a sync
-            Constraints taskConstraints = new Constraints.Builder()
-                    .setRequiredNetworkType(NetworkType.CONNECTED)
-                    .build();
+        Kumulos.schedulingExecutor.submit(() -> scheduleUpload(context));
+    }
 
-            OneTimeWorkRequest.Builder taskBuilder = new OneTimeWorkRequest.Builder(AnalyticsUploadWorker.class)
-                    .setConstraints(taskConstraints);
+    private static void scheduleUpload(Context context) {
+        // Schedule a sync
+        Constraints taskConstraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
 
-            if (BuildConfig.DEBUG) {
-                taskBuilder.setInitialDelay(10, TimeUnit.SECONDS);
-            } else {
-                taskBuilder.setInitialDelay(1, TimeUnit.MINUTES);
-            }
+        OneTimeWorkRequest.Builder taskBuilder = new OneTimeWorkRequest.Builder(AnalyticsUploadWorker.class)
+                .setConstraints(taskConstraints);
 
-            WorkManager.getInstance(mContext).enqueueUniqueWork(AnalyticsUploadWorker.TAG,
-                    ExistingWorkPolicy.REPLACE, taskBuilder.build());
+        if (BuildConfig.DEBUG) {
+            taskBuilder.setInitialDelay(10, TimeUnit.SECONDS);
+        } else {
+            taskBuilder.setInitialDelay(1, TimeUnit.MINUTES);
         }
+
+        WorkManager.getInstance(context).enqueueUniqueWork(AnalyticsUploadWorker.TAG,
+                ExistingWorkPolicy.REPLACE, taskBuilder.build());
     }
 
     /**
@@ -169,14 +316,18 @@ final class AnalyticsContract {
 
         @Override
         public void run() {
-            try (SQLiteOpenHelper dbHelper = new AnalyticsDbHelper(mContext)) {
-                SQLiteDatabase db = dbHelper.getWritableDatabase();
+            try {
+                long startedAt = SdkMetrics.now();
+                SQLiteDatabase db = AnalyticsDbHelper.getInstance(mContext).getWritableDatabase();
 
                 db.delete(
                         AnalyticsEvent.TABLE_NAME,
                         AnalyticsEvent.COL_ID + " <= ?",
                         new String[]{String.valueOf(mUpToEventId)});
 
+                SdkMetrics.dbOperation(SdkMetrics.DB_ANALYTICS, "trimEvents", startedAt);
+                reportEventBacklog(db);
+
                 Kumulos.log(TAG, "Trimmed events up to " + mUpToEventId + " (inclusive)");
             } catch (SQLiteException e) {
                 Kumulos.log(TAG, "Failed to trim events up to " + mUpToEventId + " (inclusive)");
@@ -6,11 +6,12 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import com.kumulos.android.AnalyticsContract.AnalyticsEvent;
+import com.kumulos.android.AnalyticsContract.EventStoreStats;
 
 /** package */ class AnalyticsDbHelper extends SQLiteOpenHelper {
 
     private static final String DB_NAME = "k_analytics.db";
-    private static final int DB_VERSION = 2;
+    private static final int DB_VERSION = 3;
 
     private static final String SQL_CREATE_EVENTS
             = "CREATE TABLE " + AnalyticsEvent.TABLE_NAME + "("
@@ -20,8 +21,28 @@ import com.kumulos.android.AnalyticsContract.AnalyticsEvent;
             + AnalyticsEvent.COL_UUID + " TEXT UNIQUE NOT NULL,"
             + AnalyticsEvent.COL_PROPERTIES + " TEXT )";
 
-    AnalyticsDbHelper(Context context) {
+    private static AnalyticsDbHelper instance;
+
+    private AnalyticsDbHelper(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Returns the process-wide helper for the analytics DB.
+     *
+     * The underlying connection is opened lazily on first use and kept open for the lifetime of
+     * the process, so callers must not close the helper or the database it returns.
+     *
+     * @param context
+     * @return
+     */
+    static synchronized AnalyticsDbHelper getInstance(Context context) {
+        if (null == instance) {
+            instance = new AnalyticsDbHelper(context.getApplicationContext());
+        }
+
+        return instance;
     }
 
     @Override
@@ -44,6 +65,61 @@ import com.kumulos.android.AnalyticsContract.AnalyticsEvent;
                 db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s TEXT DEFAULT NULL",
                         AnalyticsEvent.TABLE_NAME, AnalyticsEvent.COL_USER_IDENTIFIER));
                 // nobreak: fallthrough for future version upgrades
+            case 2:
+                upgradeToVersion3(db);
+                // nobreak: fallthrough for future version upgrades
+        }
+    }
+
+    private void upgradeToVersion3(SQLiteDatabase db) {
+        db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s INTEGER NOT NULL DEFAULT %d",
+                AnalyticsEvent.TABLE_NAME, AnalyticsEvent.COL_PRIORITY, AnalyticsContract.EVENT_PRIORITY_NORMAL));
+        db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s INTEGER NOT NULL DEFAULT 0",
+                AnalyticsEvent.TABLE_NAME, AnalyticsEvent.COL_SIZE_BYTES));
+
+        // Backfill any events stored by earlier versions
+        db.execSQL("UPDATE " + AnalyticsEvent.TABLE_NAME + " SET "
+                + AnalyticsEvent.COL_PRIORITY + " = CASE"
+                + " WHEN " + AnalyticsEvent.COL_EVENT_TYPE + " IN (" + quotedList(AnalyticsContract.CRITICAL_EVENT_TYPES) + ") THEN " + AnalyticsContract.EVENT_PRIORITY_CRITICAL
+                + " WHEN " + AnalyticsEvent.COL_EVENT_TYPE + " IN (" + quotedList(AnalyticsContract.LOW_PRIORITY_EVENT_TYPES) + ") THEN " + AnalyticsContract.EVENT_PRIORITY_LOW
+                + " WHEN " + AnalyticsEvent.COL_EVENT_TYPE + " NOT LIKE 'k.%' THEN " + AnalyticsContract.EVENT_PRIORITY_LOW
+                + " ELSE " + AnalyticsContract.EVENT_PRIORITY_NORMAL + " END, "
+                + AnalyticsEvent.COL_SIZE_BYTES + " = LENGTH(" + AnalyticsEvent.COL_EVENT_TYPE + ") + LENGTH(" + AnalyticsEvent.COL_UUID + ")"
+                + " + IFNULL(LENGTH(" + AnalyticsEvent.COL_PROPERTIES + "), 0) + IFNULL(LENGTH(" + AnalyticsEvent.COL_USER_IDENTIFIER + "), 0)");
+
+        db.execSQL("CREATE INDEX " + AnalyticsEvent.INDEX_PRIORITY + " ON " + AnalyticsEvent.TABLE_NAME
+                + "(" + AnalyticsEvent.COL_PRIORITY + ", " + AnalyticsEvent.COL_ID + ")");
+
+        db.execSQL("CREATE TABLE " + EventStoreStats.TABLE_NAME + "("
+                + EventStoreStats.COL_ID + " INTEGER PRIMARY KEY CHECK (" + EventStoreStats.COL_ID + " = 0), "
+                + EventStoreStats.COL_ROW_COUNT + " INTEGER NOT NULL, "
+                + EventStoreStats.COL_BYTE_COUNT + " INTEGER NOT NULL)");
+
+        db.execSQL("INSERT INTO " + EventStoreStats.TABLE_NAME + " SELECT 0, COUNT(*), IFNULL(SUM(" + AnalyticsEvent.COL_SIZE_BYTES + "), 0)"
+                + " FROM " + AnalyticsEvent.TABLE_NAME);
+
+        db.execSQL("CREATE TRIGGER " + EventStoreStats.TRIGGER_INSERT + " AFTER INSERT ON " + AnalyticsEvent.TABLE_NAME
+                + " BEGIN UPDATE " + EventStoreStats.TABLE_NAME + " SET "
+                + EventStoreStats.COL_ROW_COUNT + " = " + EventStoreStats.COL_ROW_COUNT + " + 1, "
+                + EventStoreStats.COL_BYTE_COUNT + " = " + EventStoreStats.COL_BYTE_COUNT + " + NEW." + AnalyticsEvent.COL_SIZE_BYTES
+                + " WHERE " + EventStoreStats.COL_ID + " = 0; END");
+
+        db.execSQL("CREATE TRIGGER " + EventStoreStats.TRIGGER_DELETE + " AFTER DELETE ON " + AnalyticsEvent.TABLE_NAME
+                + " BEGIN UPDATE " + EventStoreStats.TABLE_NAME + " SET "
+                + EventStoreStats.COL_ROW_COUNT + " = " + EventStoreStats.COL_ROW_COUNT + " - 1, "
+                + EventStoreStats.COL_BYTE_COUNT + " = " + EventStoreStats.COL_BYTE_COUNT + " - OLD." + AnalyticsEvent.COL_SIZE_BYTES
+                + " WHERE " + EventStoreStats.COL_ID + " = 0; END");
+    }
+
+    private static String quotedList(String[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("'").append(values[i]).append("'");
         }
+
+        return sb.toString();
     }
 }
@@ -0,0 +1,226 @@
+package com.kumulos.android;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Collects tracked events in a bounded in-memory ring and writes them to the analytics DB in
+ * batches.
+ *
+ * A batch is written once it reaches BATCH_SIZE_THRESHOLD events or its oldest event has waited
+ * BATCH_DEADLINE_MILLIS, whichever comes first. Each batch is committed in a single transaction
+ * and schedules a single upload, instead of one transaction & WorkManager enqueue per event.
+ */
+class AnalyticsEventWriter {
+
+    private static final String TAG = AnalyticsEventWriter.class.getName();
+
+    private static final int RING_CAPACITY = 256;
+    private static final int BATCH_SIZE_THRESHOLD = 32;
+    private static final long BATCH_DEADLINE_MILLIS = 5;
+
+    // Ordered by urgency
+    private static final int DRAIN_NONE = 0;
+    private static final int DRAIN_AT_DEADLINE = 1;
+    private static final int DRAIN_NOW = 2;
+
+    private final Context mContext;
+    // Waits out batch deadlines off both the main thread & the DB lane
+    private final ScheduledExecutorService deadlineTimer = LaneExecutor.timer("event-deadline");
+
+    private final Object lock = new Object();
+    private final PendingEvent[] ring = new PendingEvent[RING_CAPACITY];
+    private int head = 0;
+    private int count = 0;
+    private boolean immediateFlushRequested = false;
+    // A drain is queued on the DB lane
+    private boolean drainSubmitted = false;
+    // A deadline drain is scheduled for the current batch
+    private boolean deadlineScheduled = false;
+    // Incremented per drained batch, so a late deadline doesn't drain the next batch early
+    private int batchGeneration = 0;
+
+    private static class PendingEvent {
+        final String eventType;
+        final long happenedAt;
+        final JSONObject properties;
+        // User associated when the event was tracked, null for the installation
+        @Nullable
+        final String userIdentifier;
+
+        PendingEvent(String eventType, long happenedAt, @Nullable JSONObject properties, @Nullable String userIdentifier) {
+            this.eventType = eventType;
+            this.happenedAt = happenedAt;
+            this.properties = properties;
+            this.userIdentifier = userIdentifier;
+        }
+    }
+
+    AnalyticsEventWriter(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    void write(@NonNull String eventType, long happenedAt, @Nullable JSONObject properties, boolean immediateFlush) {
+        int drain;
+        String userIdentifier = Kumulos.getAssociatedUserIdentifier(mContext);
+
+        synchronized (lock) {
+            drain = enqueue(eventType, happenedAt, properties, userIdentifier, immediateFlush);
+        }
+
+        scheduleDrain(drain);
+    }
+
+    /**
+     * Writes several events of the same type together, so they're committed in the same batch
+     * where the ring has room for them
+     */
+    void writeAll(@NonNull String eventType, long happenedAt, @NonNull List<JSONObject> propertiesList) {
+        int drain = DRAIN_NONE;
+        String userIdentifier = Kumulos.getAssociatedUserIdentifier(mContext);
+
+        synchronized (lock) {
+            for (JSONObject properties : propertiesList) {
+                drain = Math.max(drain, enqueue(eventType, happenedAt, properties, userIdentifier, false));
+            }
+        }
+
+        scheduleDrain(drain);
+    }
+
+    /**
+     * Must be called holding the lock
+     *
+     * @return which drain, if any, the caller needs to schedule
+     */
+    private int enqueue(@NonNull String eventType, long happenedAt, @Nullable JSONObject properties, @Nullable String userIdentifier, boolean immediateFlush) {
+        if (count == RING_CAPACITY) {
+            // Ring is full, fall back to writing this event on its own rather than dropping it
+            Runnable trackingTask = new AnalyticsContract.TrackEventRunnable(mContext, eventType, happenedAt, properties, immediateFlush);
+            Kumulos.executorService.submit(trackingTask);
+            return DRAIN_NONE;
+        }
+
+        ring[(head + count) % RING_CAPACITY] = new PendingEvent(eventType, happenedAt, properties, userIdentifier);
+        count++;
+        immediateFlushRequested |= immediateFlush;
+
+        if (drainSubmitted) {
+            return DRAIN_NONE;
+        }
+
+        if (count >= BATCH_SIZE_THRESHOLD || immediateFlush) {
+            drainSubmitted = true;
+            return DRAIN_NOW;
+        }
+
+        if (!deadlineScheduled) {
+            deadlineScheduled = true;
+            return DRAIN_AT_DEADLINE;
+        }
+
+        return DRAIN_NONE;
+    }
+
+    private void scheduleDrain(int drain) {
+        if (drain == DRAIN_NOW) {
+            Kumulos.executorService.submit(new DrainRunnable());
+        } else if (drain == DRAIN_AT_DEADLINE) {
+            int generation;
+            synchronized (lock) {
+                generation = batchGeneration;
+            }
+            deadlineTimer.schedule(() -> onBatchDeadline(generation), BATCH_DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void onBatchDeadline(int generation) {
+        synchronized (lock) {
+            // The batch may already have been drained once full
+            if (generation != batchGeneration || drainSubmitted || count == 0) {
+                return;
+            }
+            drainSubmitted = true;
+        }
+
+        Kumulos.executorService.submit(new DrainRunnable());
+    }
+
+    private class DrainRunnable implements Runnable {
+        @Override
+        public void run() {
+            PendingEvent[] batch;
+            boolean immediateFlush;
+
+            synchronized (lock) {
+                batch = new PendingEvent[count];
+                for (int i = 0; i < count; ++i) {
+                    int idx = (head + i) % RING_CAPACITY;
+                    batch[i] = ring[idx];
+                    ring[idx] = null;
+                }
+
+                head = (head + count) % RING_CAPACITY;
+                count = 0;
+                immediateFlush = immediateFlushRequested;
+                immediateFlushRequested = false;
+                drainSubmitted = false;
+                deadlineScheduled = false;
+                batchGeneration++;
+            }
+
+            commitBatch(batch, immediateFlush);
+        }
+    }
+
+    private void commitBatch(PendingEvent[] batch, boolean immediateFlush) {
+        if (batch.length == 0) {
+            return;
+        }
+
+        String installId = Installation.id(mContext);
+
+        try {
+            long startedAt = SdkMetrics.now();
+            SQLiteDatabase db = AnalyticsDbHelper.getInstance(mContext).getWritableDatabase();
+
+            db.beginTransaction();
+            try {
+                for (PendingEvent event : batch) {
+                    String userIdentifier = null != event.userIdentifier ? event.userIdentifier : installId;
+                    long rowId = db.insert(AnalyticsContract.AnalyticsEvent.TABLE_NAME, null,
+                            AnalyticsContract.buildEventRow(event.eventType, event.happenedAt, event.properties, userIdentifier));
+
+                    if (rowId == -1) {
+                        Kumulos.log(TAG, "Failed to track event " + event.eventType);
+                    }
+                }
+
+                AnalyticsContract.enforceEventStoreLimits(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            SdkMetrics.dbOperation(SdkMetrics.DB_ANALYTICS, "insertEvents", startedAt);
+            AnalyticsContract.reportEventBacklog(db);
+
+            Kumulos.log(TAG, "Tracked batch of " + batch.length + " events");
+        } catch (SQLiteException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        AnalyticsContract.flushOrScheduleUpload(mContext, immediateFlush);
+    }
+}
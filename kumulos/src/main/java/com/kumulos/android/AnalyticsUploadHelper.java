@@ -4,98 +4,142 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
-import android.database.sqlite.SQLiteOpenHelper;
-import android.util.Pair;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import android.os.SystemClock;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import androidx.annotation.Nullable;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
 
 class AnalyticsUploadHelper {
 
+    private static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+
+    private static final BatchSizer batchSizer = new BatchSizer();
+    private static final AtomicBoolean compressionRejected = new AtomicBoolean(false);
+
     enum Result {
         SUCCESS,
         FAILED_RETRY_LATER
     };
 
     /** package */ Result flushEvents(Context context) {
-        try (SQLiteOpenHelper dbHelper = new AnalyticsDbHelper(context)) {
-            SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = AnalyticsDbHelper.getInstance(context).getReadableDatabase();
+
+            cursor = this.queryBatchOfEvents(db, 0L, batchSizer.getBatchSize());
+            while (cursor.moveToLast()) {
+                EventBatchBody body = new EventBatchBody(cursor);
+                long maxEventId = cursor.getLong(body.idIdx);
+                int rowCount = cursor.getCount();
+
+                GzipRequestBody gzipBody = this.shouldCompress() ? new GzipRequestBody(body) : null;
+                long startedAt = SystemClock.elapsedRealtime();
+                PendingUpload upload = this.startBatchUpload(context, null != gzipBody ? gzipBody : body, null != gzipBody);
+
+                // Read the next batch from the DB whilst this one is in flight, getCount() forces the query to run
+                Cursor nextCursor = this.queryBatchOfEvents(db, maxEventId, batchSizer.getBatchSize());
+                nextCursor.getCount();
+
+                boolean success = upload.await();
+
+                if (!success && null != gzipBody && upload.getResponseCode() == HTTP_UNSUPPORTED_MEDIA_TYPE) {
+                    Kumulos.log("Events service rejected compressed upload, falling back to uncompressed bodies");
+                    compressionRejected.set(true);
+
+                    gzipBody = null;
+                    upload = this.startBatchUpload(context, body, false);
+                    success = upload.await();
+                }
 
-            Pair<ArrayList<JSONObject>, Long> eventsResult = this.getBatchOfEvents(db, 0L);
-            ArrayList<JSONObject> events = eventsResult.first;
-            long maxEventId = eventsResult.second;
+                long roundTripMillis = SystemClock.elapsedRealtime() - startedAt;
 
-            while (!events.isEmpty()) {
-                if (!this.flushBatchToNetwork(context, events, maxEventId)) {
+                cursor.close();
+                cursor = nextCursor;
+
+                if (!success) {
+                    batchSizer.onBatchFailed();
                     return Result.FAILED_RETRY_LATER;
                 }
 
-                eventsResult = this.getBatchOfEvents(db, maxEventId);
-                events = eventsResult.first;
-                maxEventId = eventsResult.second;
+                // Batches are sized on the uncompressed payload, which is what the service has to take in
+                long bytes = body.getBytesWritten();
+                long bytesOnWire = null != gzipBody ? gzipBody.getBytesWritten() : bytes;
+
+                batchSizer.onBatchUploaded(rowCount, bytes, roundTripMillis);
+                SdkMetrics.eventBatchUploaded(rowCount, bytes, bytesOnWire, roundTripMillis);
+
+                // Clean up batch from DB
+                Runnable trimTask = new AnalyticsContract.TrimEventsRunnable(context, maxEventId);
+                Kumulos.executorService.submit(trimTask);
             }
         }
         catch (SQLiteException e) {
             e.printStackTrace();
             return Result.FAILED_RETRY_LATER;
         }
+        catch (Kumulos.UninitializedException e) {
+            Kumulos.log(e.getMessage());
+            return Result.FAILED_RETRY_LATER;
+        }
+        finally {
+            if (null != cursor) {
+                cursor.close();
+            }
+        }
 
         return Result.SUCCESS;
     }
 
-    private boolean flushBatchToNetwork(Context context, ArrayList<JSONObject> events, long maxEventId) {
-        // Pack into JSON
-        JSONArray data = new JSONArray(events);
-        String dataStr = data.toString();
-        if (null == dataStr) {
-            return false;
-        }
+    private boolean shouldCompress() {
+        KumulosConfig config = Kumulos.getConfig();
 
-        // Post to server
-        RequestBody body = RequestBody.create(MediaType.parse("application/json; charset=utf-8"), dataStr);
+        return null != config && config.eventUploadCompressionEnabled() && !compressionRejected.get();
+    }
 
-        final OkHttpClient httpClient = new OkHttpClient();
+    private PendingUpload startBatchUpload(Context context, RequestBody body, boolean gzipped) {
+        // Post to server
+        final OkHttpClient httpClient = Kumulos.getHttpClient(UrlBuilder.Service.EVENTS);
         final String url = Kumulos.urlBuilder.urlForService(UrlBuilder.Service.EVENTS, "/v1/app-installs/" + Installation.id(context) + "/events");
 
-        Request request = new Request.Builder()
+        Request.Builder requestBuilder = new Request.Builder()
                 .url(url)
-                .addHeader(Kumulos.KEY_AUTH_HEADER, Kumulos.authHeader)
-                .post(body)
-                .build();
+                .addHeader(Kumulos.KEY_AUTH_HEADER, Kumulos.authHeader);
 
-        boolean result = false;
-        try {
-            Response response = httpClient.newCall(request).execute();
+        if (gzipped) {
+            requestBuilder.addHeader("Content-Encoding", "gzip");
+        }
 
-            if (response.isSuccessful()) {
-                result = true;
-            }
+        requestBuilder.post(body);
 
-            response.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        Request request = requestBuilder.build();
 
-        // Clean up batch from DB
-        if (result) {
-            Runnable trimTask = new AnalyticsContract.TrimEventsRunnable(context, maxEventId);
-            Kumulos.executorService.submit(trimTask);
-        }
+        Call call = httpClient.newCall(request);
+        PendingUpload upload = new PendingUpload(call);
+        call.enqueue(upload);
 
-        return result;
+        return upload;
     }
 
-    private Pair<ArrayList<JSONObject>, Long> getBatchOfEvents(SQLiteDatabase db, long minEventId) {
+    private Cursor queryBatchOfEvents(SQLiteDatabase db, long minEventId, int batchSize) {
         String[] projection = {
                 AnalyticsContract.AnalyticsEvent.COL_ID,
                 AnalyticsContract.AnalyticsEvent.COL_HAPPENED_AT_MILLIS,
@@ -110,7 +154,7 @@ class AnalyticsUploadHelper {
         String selection = AnalyticsContract.AnalyticsEvent.COL_ID + " > ?";
         String[] params = new String[] {String.valueOf(minEventId)};
 
-        Cursor cursor = db.query(
+        return db.query(
                 AnalyticsContract.AnalyticsEvent.TABLE_NAME,
                 projection,
                 selection,
@@ -118,46 +162,282 @@ class AnalyticsUploadHelper {
                 null,
                 null,
                 sortBy,
-                String.valueOf(100)
+                String.valueOf(batchSize)
         );
+    }
 
-        ArrayList<JSONObject> events = new ArrayList<>();
-        long maxEventId = -1L;
+    /**
+     * Streams a batch of stored events from the cursor straight into the request as a JSON array.
+     *
+     * The stored properties are already serialized JSON, so they're spliced into the output as-is
+     * rather than being parsed and re-encoded. The cursor may be rewound & written more than once
+     * if OkHttp retries the request.
+     */
+    static class EventBatchBody extends RequestBody {
+
+        private final Cursor cursor;
+        final int idIdx;
+        private final int typeIdx;
+        private final int uuidIdx;
+        private final int happenedAtIdx;
+        private final int propsIdx;
+        private final int userIdIdx;
+
+        private volatile long bytesWritten = 0;
+
+        EventBatchBody(Cursor cursor) {
+            this.cursor = cursor;
+
+            idIdx = cursor.getColumnIndexOrThrow(AnalyticsContract.AnalyticsEvent.COL_ID);
+            typeIdx = cursor.getColumnIndexOrThrow(AnalyticsContract.AnalyticsEvent.COL_EVENT_TYPE);
+            uuidIdx = cursor.getColumnIndexOrThrow(AnalyticsContract.AnalyticsEvent.COL_UUID);
+            happenedAtIdx = cursor.getColumnIndexOrThrow(AnalyticsContract.AnalyticsEvent.COL_HAPPENED_AT_MILLIS);
+            propsIdx = cursor.getColumnIndexOrThrow(AnalyticsContract.AnalyticsEvent.COL_PROPERTIES);
+            userIdIdx = cursor.getColumnIndexOrThrow(AnalyticsContract.AnalyticsEvent.COL_USER_IDENTIFIER);
+        }
 
-        while (cursor.moveToNext()) {
-            JSONObject event = new JSONObject();
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return MEDIA_TYPE_JSON;
+        }
 
-            try {
-                event.put("type", cursor.getString(cursor.getColumnIndex(AnalyticsContract.AnalyticsEvent.COL_EVENT_TYPE)));
-                event.put("uuid", cursor.getString(cursor.getColumnIndex(AnalyticsContract.AnalyticsEvent.COL_UUID)));
-                event.put("timestamp", cursor.getLong(cursor.getColumnIndex(AnalyticsContract.AnalyticsEvent.COL_HAPPENED_AT_MILLIS)));
+        long getBytesWritten() {
+            return bytesWritten;
+        }
 
-                int propsIdx = cursor.getColumnIndex(AnalyticsContract.AnalyticsEvent.COL_PROPERTIES);
-                if (!cursor.isNull(propsIdx)) {
-                    String eventPropsStr = cursor.getString(propsIdx);
-                    event.put("data", new JSONObject(eventPropsStr));
+        @Override
+        public void writeTo(BufferedSink requestSink) throws IOException {
+            CountingSink counter = new CountingSink(requestSink);
+            BufferedSink sink = Okio.buffer(counter);
+
+            sink.writeByte('[');
+
+            cursor.moveToPosition(-1);
+            boolean first = true;
+            while (cursor.moveToNext()) {
+                if (!first) {
+                    sink.writeByte(',');
                 }
+                first = false;
 
-                String userId = null;
-                int userIdIdx = cursor.getColumnIndex(
-                        AnalyticsContract.AnalyticsEvent.COL_USER_IDENTIFIER);
+                sink.writeUtf8("{\"type\":");
+                writeJsonString(sink, cursor.getString(typeIdx));
+                sink.writeUtf8(",\"uuid\":");
+                writeJsonString(sink, cursor.getString(uuidIdx));
+                sink.writeUtf8(",\"timestamp\":");
+                sink.writeDecimalLong(cursor.getLong(happenedAtIdx));
+
+                if (!cursor.isNull(propsIdx)) {
+                    sink.writeUtf8(",\"data\":");
+                    sink.writeUtf8(cursor.getString(propsIdx));
+                }
 
                 if (!cursor.isNull(userIdIdx)) {
-                    userId = cursor.getString(userIdIdx);
+                    sink.writeUtf8(",\"userId\":");
+                    writeJsonString(sink, cursor.getString(userIdIdx));
+                }
+
+                sink.writeByte('}');
+            }
+
+            sink.writeByte(']');
+            sink.emit();
+
+            bytesWritten = counter.count;
+        }
+
+        private static void writeJsonString(BufferedSink sink, String value) throws IOException {
+            sink.writeByte('"');
+
+            int runStart = 0;
+            int len = value.length();
+            for (int i = 0; i < len; ++i) {
+                char c = value.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    continue;
+                }
+
+                if (i > runStart) {
+                    sink.writeUtf8(value, runStart, i);
                 }
+                runStart = i + 1;
+
+                switch (c) {
+                    case '"':
+                        sink.writeUtf8("\\\"");
+                        break;
+                    case '\\':
+                        sink.writeUtf8("\\\\");
+                        break;
+                    case '\n':
+                        sink.writeUtf8("\\n");
+                        break;
+                    case '\r':
+                        sink.writeUtf8("\\r");
+                        break;
+                    case '\t':
+                        sink.writeUtf8("\\t");
+                        break;
+                    default:
+                        sink.writeUtf8(String.format("\\u%04x", (int) c));
+                        break;
+                }
+            }
+
+            if (len > runStart) {
+                sink.writeUtf8(value, runStart, len);
+            }
+
+            sink.writeByte('"');
+        }
+    }
+
+    private static class CountingSink extends ForwardingSink {
+        long count = 0;
+
+        CountingSink(Sink delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            count += byteCount;
+        }
+    }
+
+    /**
+     * Tracks an in-flight batch POST so the next batch can be prepared whilst waiting on it
+     */
+    private static class PendingUpload implements Callback {
+
+        private final Call call;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean successful = false;
+        private volatile int responseCode = -1;
+
+        PendingUpload(Call call) {
+            this.call = call;
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            e.printStackTrace();
+            done.countDown();
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            successful = response.isSuccessful();
+            responseCode = response.code();
+            response.close();
+            done.countDown();
+        }
+
+        boolean await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                // The request body reads from a cursor that's about to be closed, so stop the call
+                call.cancel();
+                Thread.currentThread().interrupt();
+                return false;
+            }
 
-                event.put("userId", userId);
+            return successful;
+        }
+
+        int getResponseCode() {
+            return responseCode;
+        }
+    }
+
+    static class GzipRequestBody extends RequestBody {
+
+        private final RequestBody body;
+
+        private volatile long bytesWritten = 0;
+
+        GzipRequestBody(RequestBody body) {
+            this.body = body;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            // Unknown until compressed
+            return -1;
+        }
 
-                events.add(event);
+        /**
+         * @return compressed size of the last write
+         */
+        long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // Counts beneath the compressor, so this is the size on the wire
+            CountingSink counter = new CountingSink(sink);
+            BufferedSink gzipSink = Okio.buffer(new GzipSink(counter));
+            body.writeTo(gzipSink);
+            gzipSink.close();
+
+            bytesWritten = counter.count;
+        }
+    }
+
+    /**
+     * Adapts the number of events per upload to the observed payload size & round-trip latency.
+     *
+     * Batches grow whilst full batches upload quickly, and shrink when a request is slow, fails,
+     * or the payload would exceed TARGET_BATCH_BYTES. The learned size is kept for the process.
+     */
+    static class BatchSizer {
+        static final int MIN_BATCH_SIZE = 20;
+        static final int INITIAL_BATCH_SIZE = 100;
+        static final int MAX_BATCH_SIZE = 500;
+        static final long TARGET_BATCH_BYTES = 256 * 1024;
+        static final long TARGET_ROUND_TRIP_MILLIS = 2000;
+
+        private int batchSize = INITIAL_BATCH_SIZE;
+        private long avgBytesPerEvent = 0;
+
+        synchronized int getBatchSize() {
+            return batchSize;
+        }
 
-                maxEventId = cursor.getLong(cursor.getColumnIndex(AnalyticsContract.AnalyticsEvent.COL_ID));
-            } catch (JSONException e) {
-                e.printStackTrace();
+        synchronized void onBatchUploaded(int eventCount, long bytes, long roundTripMillis) {
+            if (eventCount <= 0) {
+                return;
             }
+
+            long bytesPerEvent = Math.max(1, bytes / eventCount);
+            avgBytesPerEvent = (avgBytesPerEvent == 0) ? bytesPerEvent : (avgBytesPerEvent * 3 + bytesPerEvent) / 4;
+
+            int nextSize = batchSize;
+            if (roundTripMillis > TARGET_ROUND_TRIP_MILLIS) {
+                nextSize = batchSize / 2;
+            } else if (eventCount >= batchSize) {
+                nextSize = batchSize * 2;
+            }
+
+            int sizeForTargetBytes = (int) Math.min(Integer.MAX_VALUE, TARGET_BATCH_BYTES / avgBytesPerEvent);
+            nextSize = Math.min(nextSize, sizeForTargetBytes);
+
+            batchSize = Math.max(MIN_BATCH_SIZE, Math.min(MAX_BATCH_SIZE, nextSize));
         }
-        cursor.close();
 
-        return new Pair<>(events, maxEventId);
+        synchronized void onBatchFailed() {
+            batchSize = Math.max(MIN_BATCH_SIZE, batchSize / 2);
+        }
     }
 
 }
@@ -8,6 +8,7 @@ import androidx.work.WorkerParameters;
 
 public class AnalyticsUploadWorker extends Worker {
     static final String TAG = AnalyticsUploadWorker.class.getName();
+    private static final String TRACE_SECTION = "Kumulos worker: AnalyticsUploadWorker";
 
     public AnalyticsUploadWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
@@ -17,7 +18,14 @@ public class AnalyticsUploadWorker extends Worker {
     @Override
     public Result doWork() {
         AnalyticsUploadHelper helper = new AnalyticsUploadHelper();
-        AnalyticsUploadHelper.Result result = helper.flushEvents(getApplicationContext());
+        AnalyticsUploadHelper.Result result;
+
+        long traceStartedAt = SdkTracing.begin(TRACE_SECTION);
+        try {
+            result = helper.flushEvents(getApplicationContext());
+        } finally {
+            SdkTracing.end(TRACE_SECTION, traceStartedAt);
+        }
 
         if (result == AnalyticsUploadHelper.Result.FAILED_RETRY_LATER) {
             return Result.retry();
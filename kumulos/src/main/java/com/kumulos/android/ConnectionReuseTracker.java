@@ -0,0 +1,52 @@
+package com.kumulos.android;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.Nullable;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+
+/**
+ * Counts how often SDK HTTP calls are served by a pooled connection rather than paying for a
+ * fresh TCP & TLS handshake, for debug logging. Per-call reuse is reported to the metrics
+ * listener by HttpCallMetrics.
+ */
+final class ConnectionReuseTracker extends EventListener {
+
+    private static final String TAG = ConnectionReuseTracker.class.getName();
+
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong connectionsEstablished = new AtomicLong();
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, @Nullable Protocol protocol) {
+        connectionsEstablished.incrementAndGet();
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        long acquired = connectionsAcquired.incrementAndGet();
+
+        if (BuildConfig.DEBUG) {
+            Kumulos.log(TAG, "Acquired " + connection.protocol() + " connection to " + call.request().url().host()
+                    + ", reuse rate " + Math.round(getReuseRate(acquired) * 100) + "%");
+        }
+    }
+
+    /**
+     * @return Fraction of calls (0..1) which reused an already-open connection
+     */
+    private double getReuseRate(long acquired) {
+        if (acquired == 0) {
+            return 0;
+        }
+
+        long reused = Math.max(0, acquired - connectionsEstablished.get());
+
+        return (double) reused / acquired;
+    }
+}
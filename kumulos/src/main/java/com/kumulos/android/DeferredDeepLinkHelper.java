@@ -246,7 +246,7 @@ public class DeferredDeepLinkHelper {
     }
 
     private void makeNetworkRequest(Context context, OkHttpClient httpClient, Request request, URL url, boolean wasDeferred) {
-        Kumulos.executorService.submit(new Runnable() {
+        Kumulos.networkExecutor.submit(new Runnable() {
             @Override
             public void run() {
                 try (Response response = httpClient.newCall(request).execute()) {
@@ -0,0 +1,83 @@
+package com.kumulos.android;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+
+import androidx.annotation.Nullable;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+
+/**
+ * Per-call listener measuring latency, body bytes & connection reuse of an SDK HTTP call,
+ * attributed to the Kumulos service by URL. Connection events are passed on to the shared reuse
+ * tracker.
+ */
+final class HttpCallMetrics extends EventListener {
+
+    static final EventListener.Factory FACTORY = call -> SdkMetrics.isEnabled()
+            ? new HttpCallMetrics(Kumulos.connectionReuseTracker)
+            : Kumulos.connectionReuseTracker;
+
+    private final EventListener connectionTracker;
+
+    private long startedAt;
+    private long bytesSent = 0;
+    private long bytesReceived = 0;
+    private boolean connectionAcquired = false;
+    private boolean connectionEstablished = false;
+
+    private HttpCallMetrics(EventListener connectionTracker) {
+        this.connectionTracker = connectionTracker;
+    }
+
+    @Override
+    public void callStart(Call call) {
+        startedAt = SdkMetrics.now();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, @Nullable Protocol protocol) {
+        connectionEstablished = true;
+        connectionTracker.connectEnd(call, inetSocketAddress, proxy, protocol);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        connectionAcquired = true;
+        connectionTracker.connectionAcquired(call, connection);
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        bytesSent += byteCount;
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        bytesReceived += byteCount;
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        report(call, true);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        report(call, false);
+    }
+
+    private void report(Call call, boolean succeeded) {
+        UrlBuilder.Service service = Kumulos.urlBuilder != null
+                ? Kumulos.urlBuilder.serviceForUrl(call.request().url().toString())
+                : null;
+
+        // Reused when the call was served without opening a connection of its own
+        boolean connectionReused = connectionAcquired && !connectionEstablished;
+
+        SdkMetrics.httpCallCompleted(service, SdkMetrics.now() - startedAt, bytesSent, bytesReceived, connectionReused, succeeded);
+    }
+}
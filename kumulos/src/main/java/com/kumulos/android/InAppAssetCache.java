@@ -0,0 +1,525 @@
+package com.kumulos.android;
+
+import android.content.Context;
+import android.os.Build;
+import android.webkit.WebResourceResponse;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * Size-bounded on-disk cache of the in-app renderer & the images referenced by stored messages.
+ *
+ * Filled by the in-app sync worker, then served to the in-app WebViews from shouldInterceptRequest
+ * so messages display without waiting on the network, and offline.
+ *
+ * Each asset lives as long as the latest expiry of the messages referencing it. Assets that are
+ * expired or no longer referenced are evicted first, then the least recently used until the cache
+ * is back under MAX_CACHE_BYTES.
+ */
+final class InAppAssetCache {
+
+    private static final String TAG = InAppAssetCache.class.getName();
+
+    private static final String DIR_NAME = "kumulos_in_app_assets";
+    private static final String INDEX_FILE_NAME = "index.json";
+
+    static final long MAX_CACHE_BYTES = 10 * 1024 * 1024;
+    private static final long MAX_ASSET_BYTES = 2 * 1024 * 1024;
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private static final Pattern RENDERER_ASSET_REFERENCE = Pattern.compile("(?:src|href)\\s*=\\s*[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
+    private static final Pattern IMAGE_PATH = Pattern.compile(".*\\.(png|jpe?g|gif|webp|svg|bmp)$", Pattern.CASE_INSENSITIVE);
+
+    private static final Object lock = new Object();
+    // Keyed by URL, null until loaded
+    @Nullable
+    private static Map<String, Entry> index;
+
+    private InAppAssetCache() {
+    }
+
+    static final class MessageSource {
+        final String contentJson;
+        final long expiresAtMillis;
+
+        MessageSource(String contentJson, long expiresAtMillis) {
+            this.contentJson = contentJson;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private static final class Entry {
+        final String url;
+        final String fileName;
+        final String contentType;
+        final long size;
+        long expiresAtMillis;
+        long lastAccessMillis;
+
+        Entry(String url, String fileName, String contentType, long size, long expiresAtMillis, long lastAccessMillis) {
+            this.url = url;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.size = size;
+            this.expiresAtMillis = expiresAtMillis;
+            this.lastAccessMillis = lastAccessMillis;
+        }
+    }
+
+    //==============================================================================================
+    //-- Reads
+
+    /**
+     * @return The cached asset for the URL, or null to load it from the network
+     */
+    @Nullable
+    static WebResourceResponse read(Context context, String url) {
+        Entry entry;
+        File file;
+        synchronized (lock) {
+            entry = getIndex(context).get(url);
+            if (entry == null) {
+                return null;
+            }
+
+            long now = System.currentTimeMillis();
+            if (entry.expiresAtMillis <= now) {
+                return null;
+            }
+
+            entry.lastAccessMillis = now;
+            file = new File(getDir(context), entry.fileName);
+        }
+
+        InputStream data;
+        try {
+            data = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        MediaType type = MediaType.parse(entry.contentType);
+        String mimeType = type != null ? type.type() + "/" + type.subtype() : "application/octet-stream";
+        Charset charset = type != null ? type.charset() : null;
+        String encoding = charset != null ? charset.name() : null;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            Map<String, String> headers = new HashMap<>();
+            // Renderer scripts may be loaded with the crossorigin attribute
+            headers.put("Access-Control-Allow-Origin", "*");
+            return new WebResourceResponse(mimeType, encoding, 200, "OK", headers, data);
+        }
+
+        return new WebResourceResponse(mimeType, encoding, data);
+    }
+
+    //==============================================================================================
+    //-- Prefetching
+
+    /**
+     * Downloads the renderer & the images of messages which may still be shown, then evicts
+     * assets to stay within bounds
+     */
+    @WorkerThread
+    static void prefetch(Context context) {
+        List<MessageSource> sources = new InAppContract.ReadAssetSourcesCallable(context).call();
+        if (sources == null) {
+            return;
+        }
+
+        OkHttpClient httpClient;
+        try {
+            httpClient = Kumulos.getHttpClient();
+        } catch (Kumulos.UninitializedException e) {
+            Kumulos.log(TAG, "Kumulos not initialized, skipping in-app asset prefetch");
+            return;
+        }
+
+        File dir = getDir(context);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+
+        // URL to the expiry of the longest lived message referencing it
+        Map<String, Long> wanted = new LinkedHashMap<>();
+
+        String rendererUrl = Kumulos.urlBuilder.urlForService(UrlBuilder.Service.IAR, "");
+        // The renderer page is refreshed every time, its hashed scripts & styles only when missing
+        Entry renderer = download(httpClient, dir, rendererUrl, NO_EXPIRY, false);
+        if (renderer != null) {
+            put(context, renderer);
+        } else {
+            // Keep the last good renderer whilst it can't be refreshed
+            renderer = getEntry(context, rendererUrl);
+        }
+
+        if (renderer != null) {
+            wanted.put(rendererUrl, NO_EXPIRY);
+            for (String url : findRendererAssets(dir, renderer, rendererUrl)) {
+                wanted.put(url, NO_EXPIRY);
+            }
+        }
+
+        for (MessageSource source : sources) {
+            List<String> urls = new ArrayList<>();
+            try {
+                collectImageUrls(new JSONObject(source.contentJson), null, urls);
+            } catch (JSONException e) {
+                Kumulos.log(TAG, e.getMessage());
+                continue;
+            }
+
+            for (String url : urls) {
+                Long expiry = wanted.get(url);
+                if (expiry == null || expiry < source.expiresAtMillis) {
+                    wanted.put(url, source.expiresAtMillis);
+                }
+            }
+        }
+
+        for (Map.Entry<String, Long> asset : wanted.entrySet()) {
+            String url = asset.getKey();
+            if (url.equals(rendererUrl)) {
+                continue;
+            }
+
+            if (updateExpiry(context, url, asset.getValue())) {
+                continue;
+            }
+
+            Entry downloaded = download(httpClient, dir, url, asset.getValue(), !isRendererAsset(url, rendererUrl));
+            if (downloaded != null) {
+                put(context, downloaded);
+            }
+        }
+
+        evict(context, wanted);
+    }
+
+    @Nullable
+    private static Entry download(OkHttpClient httpClient, File dir, String url, long expiresAtMillis, boolean imagesOnly) {
+        Request request = new Request.Builder().url(url).get().build();
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                return null;
+            }
+
+            MediaType type = body.contentType();
+            if (type == null || (imagesOnly && !"image".equals(type.type()))) {
+                return null;
+            }
+
+            long length = body.contentLength();
+            if (length > MAX_ASSET_BYTES) {
+                return null;
+            }
+
+            String fileName = ByteString.encodeUtf8(url).sha256().hex();
+            File tmp = new File(dir, fileName + ".tmp");
+            long size = 0;
+            try (InputStream in = body.byteStream(); OutputStream out = new FileOutputStream(tmp)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    size += read;
+                    if (size > MAX_ASSET_BYTES) {
+                        break;
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            if (size > MAX_ASSET_BYTES || !tmp.renameTo(new File(dir, fileName))) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+                return null;
+            }
+
+            return new Entry(url, fileName, type.toString(), size, expiresAtMillis, System.currentTimeMillis());
+        } catch (IOException | IllegalArgumentException e) {
+            Kumulos.log(TAG, "Failed to fetch in-app asset " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Scripts, styles & images referenced by the renderer page, on the renderer host
+     */
+    private static List<String> findRendererAssets(File dir, Entry renderer, String rendererUrl) {
+        List<String> urls = new ArrayList<>();
+        HttpUrl base = HttpUrl.parse(rendererUrl);
+        if (base == null) {
+            return urls;
+        }
+
+        String html;
+        try {
+            html = readFile(new File(dir, renderer.fileName));
+        } catch (IOException e) {
+            Kumulos.log(TAG, e.getMessage());
+            return urls;
+        }
+
+        Matcher matcher = RENDERER_ASSET_REFERENCE.matcher(html);
+        while (matcher.find()) {
+            HttpUrl resolved = base.resolve(matcher.group(1));
+            if (resolved == null || !resolved.host().equals(base.host())) {
+                continue;
+            }
+
+            String url = resolved.toString();
+            if (!url.equals(rendererUrl) && !urls.contains(url)) {
+                urls.add(url);
+            }
+        }
+
+        return urls;
+    }
+
+    private static boolean isRendererAsset(String url, String rendererUrl) {
+        HttpUrl parsed = HttpUrl.parse(url);
+        HttpUrl base = HttpUrl.parse(rendererUrl);
+
+        return parsed != null && base != null && parsed.host().equals(base.host());
+    }
+
+    /**
+     * Collects absolute URLs of images in message content: values of keys mentioning "image", or
+     * with an image file extension. Button actions are skipped as their URLs are links.
+     */
+    private static void collectImageUrls(Object value, @Nullable String key, List<String> urls) {
+        if (value instanceof JSONObject) {
+            JSONObject obj = (JSONObject) value;
+            Iterator<String> keys = obj.keys();
+            while (keys.hasNext()) {
+                String childKey = keys.next();
+                if ("actions".equals(childKey)) {
+                    continue;
+                }
+                collectImageUrls(obj.opt(childKey), childKey, urls);
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray arr = (JSONArray) value;
+            for (int i = 0; i < arr.length(); ++i) {
+                collectImageUrls(arr.opt(i), key, urls);
+            }
+        } else if (value instanceof String) {
+            String str = (String) value;
+            HttpUrl url = HttpUrl.parse(str);
+            if (url == null || urls.contains(str)) {
+                return;
+            }
+
+            boolean imageKey = key != null && key.toLowerCase(Locale.US).contains("image");
+            if (imageKey || IMAGE_PATH.matcher(url.encodedPath()).matches()) {
+                urls.add(str);
+            }
+        }
+    }
+
+    //==============================================================================================
+    //-- Index
+
+    private static File getDir(Context context) {
+        return new File(context.getCacheDir(), DIR_NAME);
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private static Map<String, Entry> getIndex(Context context) {
+        if (index != null) {
+            return index;
+        }
+
+        index = new HashMap<>();
+        File file = new File(getDir(context), INDEX_FILE_NAME);
+        if (!file.exists()) {
+            return index;
+        }
+
+        try {
+            JSONArray entries = new JSONArray(readFile(file));
+            for (int i = 0; i < entries.length(); ++i) {
+                JSONObject e = entries.getJSONObject(i);
+                Entry entry = new Entry(e.getString("url"), e.getString("file"), e.getString("type"),
+                        e.getLong("size"), e.getLong("expiresAt"), e.getLong("lastAccess"));
+                index.put(entry.url, entry);
+            }
+        } catch (IOException | JSONException e) {
+            Kumulos.log(TAG, "Discarding unreadable in-app asset index: " + e.getMessage());
+            index.clear();
+        }
+
+        return index;
+    }
+
+    @Nullable
+    private static Entry getEntry(Context context, String url) {
+        synchronized (lock) {
+            return getIndex(context).get(url);
+        }
+    }
+
+    private static void put(Context context, Entry entry) {
+        synchronized (lock) {
+            getIndex(context).put(entry.url, entry);
+        }
+    }
+
+    /**
+     * @return whether the asset is already cached
+     */
+    private static boolean updateExpiry(Context context, String url, long expiresAtMillis) {
+        synchronized (lock) {
+            Entry entry = getIndex(context).get(url);
+            if (entry == null) {
+                return false;
+            }
+
+            entry.expiresAtMillis = expiresAtMillis;
+            return true;
+        }
+    }
+
+    private static void evict(Context context, Map<String, Long> wanted) {
+        File dir = getDir(context);
+        long now = System.currentTimeMillis();
+
+        synchronized (lock) {
+            Map<String, Entry> entries = getIndex(context);
+            List<Entry> kept = new ArrayList<>(entries.size());
+            long totalSize = 0;
+
+            for (Entry entry : entries.values()) {
+                if (!wanted.containsKey(entry.url) || entry.expiresAtMillis <= now) {
+                    deleteFile(dir, entry);
+                    continue;
+                }
+                kept.add(entry);
+                totalSize += entry.size;
+            }
+
+            // Long.compare needs API 19
+            Collections.sort(kept, (a, b) -> a.lastAccessMillis < b.lastAccessMillis ? -1 : (a.lastAccessMillis == b.lastAccessMillis ? 0 : 1));
+            int evictFrom = 0;
+            while (totalSize > MAX_CACHE_BYTES && evictFrom < kept.size()) {
+                Entry entry = kept.get(evictFrom++);
+                deleteFile(dir, entry);
+                totalSize -= entry.size;
+            }
+
+            entries.clear();
+            for (Entry entry : kept.subList(evictFrom, kept.size())) {
+                entries.put(entry.url, entry);
+            }
+
+            writeIndex(dir, entries);
+        }
+    }
+
+    /**
+     * Clears the cache on the DB lane, for callers on the UI thread
+     */
+    static void clearInBackground(Context context) {
+        Context appContext = context.getApplicationContext();
+        Kumulos.executorService.submit(() -> clear(appContext));
+    }
+
+    /**
+     * Removes all cached assets
+     */
+    static void clear(Context context) {
+        File dir = getDir(context);
+
+        synchronized (lock) {
+            index = new HashMap<>();
+
+            File[] files = dir.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private static void deleteFile(File dir, Entry entry) {
+        //noinspection ResultOfMethodCallIgnored
+        new File(dir, entry.fileName).delete();
+    }
+
+    private static void writeIndex(File dir, Map<String, Entry> entries) {
+        JSONArray out = new JSONArray();
+        try {
+            for (Entry entry : entries.values()) {
+                out.put(new JSONObject()
+                        .put("url", entry.url)
+                        .put("file", entry.fileName)
+                        .put("type", entry.contentType)
+                        .put("size", entry.size)
+                        .put("expiresAt", entry.expiresAtMillis)
+                        .put("lastAccess", entry.lastAccessMillis));
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        File tmp = new File(dir, INDEX_FILE_NAME + ".tmp");
+        try (OutputStream os = new FileOutputStream(tmp)) {
+            os.write(out.toString().getBytes(Charset.forName("UTF-8")));
+        } catch (IOException e) {
+            Kumulos.log(TAG, e.getMessage());
+            return;
+        }
+
+        if (!tmp.renameTo(new File(dir, INDEX_FILE_NAME))) {
+            Kumulos.log(TAG, "Failed to save in-app asset index");
+        }
+    }
+
+    @NonNull
+    private static String readFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return Okio.buffer(Okio.source(in)).readUtf8();
+        }
+    }
+}
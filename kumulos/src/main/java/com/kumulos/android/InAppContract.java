@@ -6,24 +6,24 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 import android.util.Pair;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
-import java.util.TimeZone;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import androidx.annotation.Nullable;
 
-import static android.database.sqlite.SQLiteDatabase.CONFLICT_IGNORE;
-
 class InAppContract {
 
     private InAppContract() {
@@ -44,23 +44,42 @@ class InAppContract {
         static final String COL_EXPIRES_AT = "expiresAt";
         static final String COL_READ_AT = "readAt";
         static final String COL_SENT_AT = "sentAt";
+
+        // Epoch millis mirrors of the date columns, used for filtering & sorting so queries can
+        // range scan indexes instead of parsing date strings per row
+        static final String COL_EXPIRES_AT_MS = "expiresAtMs";
+        static final String COL_INBOX_FROM_MS = "inboxFromMs";
+        static final String COL_INBOX_TO_MS = "inboxToMs";
+        static final String COL_SENT_AT_MS = "sentAtMs";
+        static final String COL_UPDATED_AT_MS = "updatedAtMs";
+
+        static final String INDEX_PRESENTABLE = "idx_in_app_presentable";
+        static final String INDEX_INBOX = "idx_in_app_inbox";
+        static final String INDEX_SENT_ORDER = "idx_in_app_sent_order";
+
+        /** Stored in place of a missing lower bound (inboxFrom, sentAt) */
+        static final long NO_LOWER_BOUND_MS = 0;
+        /** Stored in place of a missing upper bound (expiresAt, inboxTo) */
+        static final long NO_UPPER_BOUND_MS = Long.MAX_VALUE;
+        /** Stored as inboxToMs for messages without an inbox, so they never fall in the visible window */
+        static final long NO_INBOX_MS = -1;
     }
 
-    private static final SimpleDateFormat dbDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
-    private static final SimpleDateFormat incomingDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
-    private static final String DESC_SORT_ORDER = InAppMessageTable.COL_SENT_AT + " DESC, " + InAppMessageTable.COL_UPDATED_AT + " DESC, " + InAppMessageTable.COL_ID + " DESC";
-    private static final String ASC_SORT_ORDER = InAppMessageTable.COL_SENT_AT + " ASC, " + InAppMessageTable.COL_UPDATED_AT + " ASC, " + InAppMessageTable.COL_ID + " ASC";
+    private static final String DESC_SORT_ORDER = InAppMessageTable.COL_SENT_AT_MS + " DESC, " + InAppMessageTable.COL_UPDATED_AT_MS + " DESC, " + InAppMessageTable.COL_ID + " DESC";
+    private static final String ASC_SORT_ORDER = InAppMessageTable.COL_SENT_AT_MS + " ASC, " + InAppMessageTable.COL_UPDATED_AT_MS + " ASC, " + InAppMessageTable.COL_ID + " ASC";
+    // Expects the current epoch millis bound as ?1
+    private static final String INBOX_VISIBLE_CONDITION = InAppMessageTable.COL_INBOX_TO_MS + " >= ?1 AND " + InAppMessageTable.COL_INBOX_FROM_MS + " <= ?1";
     private static final Integer STORED_IN_APP_LIMIT = 50;
 
-    static {
-        dbDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
-
     static @Nullable
     Date getNullableDate(Cursor cursor, String column) throws ParseException {
         String date = cursor.getString(cursor.getColumnIndexOrThrow(column));
 
-        return date == null ? null : dbDateFormat.parse(date);
+        return date == null ? null : TimestampCodec.parseDb(date);
+    }
+
+    static String[] nowArgs() {
+        return new String[]{String.valueOf(System.currentTimeMillis())};
     }
 
     static @Nullable
@@ -80,10 +99,13 @@ class InAppContract {
 
         @Override
         public void run() {
-            try (SQLiteOpenHelper dbHelper = new InAppDbHelper(mContext)) {
+            try {
+                SQLiteOpenHelper dbHelper = InAppDbHelper.getInstance(mContext);
                 SQLiteDatabase db = dbHelper.getWritableDatabase();
 
                 db.execSQL("delete from " + InAppMessageTable.TABLE_NAME);
+                InAppInboxCache.clear();
+                InAppAssetCache.clear(mContext);
             } catch (SQLiteException e) {
                 Kumulos.log(TAG, "Failed clearing in-app db ");
                 e.printStackTrace();
@@ -104,9 +126,10 @@ class InAppContract {
 
         @Override
         public void run() {
-            try (SQLiteOpenHelper dbHelper = new InAppDbHelper(mContext)) {
+            try {
+                SQLiteOpenHelper dbHelper = InAppDbHelper.getInstance(mContext);
                 SQLiteDatabase db = dbHelper.getWritableDatabase();
-                String datetime = dbDateFormat.format(mInAppMessage.getDismissedAt());
+                String datetime = TimestampCodec.formatDb(mInAppMessage.getDismissedAt());
                 String sql = "UPDATE " + InAppMessageTable.TABLE_NAME
                         + " SET " + InAppMessageTable.COL_DISMISSED_AT + " = ?, " + InAppMessageTable.COL_READ_AT + " = IFNULL(readAt, ?)"
                         + " WHERE " + InAppMessageTable.COL_ID + " = ?;";
@@ -114,6 +137,8 @@ class InAppContract {
                 Cursor c = db.rawQuery(sql, new String[]{datetime, datetime, mInAppMessage.getInAppId() + ""});
                 c.moveToFirst();
                 c.close();
+
+                InAppInboxCache.markDismissed(mInAppMessage.getInAppId(), mInAppMessage.getDismissedAt());
             } catch (SQLiteException e) {
                 Kumulos.log(TAG, "Failed to track open for inAppID: " + mInAppMessage.getInAppId());
                 e.printStackTrace();
@@ -121,6 +146,9 @@ class InAppContract {
         }
     }
 
+    /**
+     * Returns null when the messages couldn't be saved
+     */
     static class SaveInAppMessagesCallable implements Callable<InAppSaveResult> {
 
         private static final String TAG = SaveInAppMessagesCallable.class.getName();
@@ -139,27 +167,69 @@ class InAppContract {
             List<Integer> deliveredIds = new ArrayList<>();
             List<Integer> deletedIds = new ArrayList<>();
             boolean inboxUpdated = false;
+            int insertedCount = 0;
 
-            try (SQLiteOpenHelper dbHelper = new InAppDbHelper(mContext)) {
+            long startedAt = SdkMetrics.now();
+            try {
+                SQLiteOpenHelper dbHelper = InAppDbHelper.getInstance(mContext);
                 List<ContentValues> rows = this.assembleRows();
 
                 SQLiteDatabase db = dbHelper.getWritableDatabase();
 
-                deliveredIds = this.insertRows(db, rows);
-                Pair<Boolean, List<Integer>> deleteResult = this.deleteRows(db);
-                deletedIds = deleteResult.second;
-                itemsToPresent = this.readRows(db);
-                inboxUpdated = this.isInboxUpdated(mInAppMessages, deleteResult.first);
+                // Upsert, eviction & re-read share one journal commit rather than one per statement
+                db.beginTransaction();
+                try {
+                    insertedCount = this.upsertRows(db, rows, deliveredIds);
+                    Pair<Boolean, List<Integer>> deleteResult = this.deleteRows(db);
+                    deletedIds = deleteResult.second;
+                    itemsToPresent = this.readRows(db);
+                    inboxUpdated = this.isInboxUpdated(mInAppMessages, deleteResult.first);
+
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+
+                this.updateInboxCache(db, deliveredIds, deletedIds);
+                SdkMetrics.dbOperation(SdkMetrics.DB_IN_APP, "saveSync", startedAt);
 
-                Kumulos.log(TAG, "Saved messages: " + mInAppMessages.size());
+                Kumulos.log(TAG, "Saved messages: " + mInAppMessages.size() + " (inserted " + insertedCount
+                        + ", updated " + (deliveredIds.size() - insertedCount) + ", deleted " + deletedIds.size() + ")");
             } catch (SQLiteException e) {
                 Kumulos.log(TAG, "Failed to save messages: " + mInAppMessages.size());
                 e.printStackTrace();
+                return null;
             } catch (Exception e) {
                 Kumulos.log(TAG, e.getMessage());
+                return null;
             }
 
-            return new InAppSaveResult(itemsToPresent, deliveredIds, deletedIds, inboxUpdated);
+            return new InAppSaveResult(itemsToPresent, deliveredIds, deletedIds, inboxUpdated, insertedCount, deliveredIds.size() - insertedCount);
+        }
+
+        /**
+         * Delivered messages which no longer have an inbox are dropped along with evicted ones.
+         *
+         * Runs after the commit, so a failure here can't lose the saved sync. The cache is dropped
+         * instead, and the next inbox read reloads it from the DB.
+         */
+        private void updateInboxCache(SQLiteDatabase db, List<Integer> deliveredIds, List<Integer> deletedIds) {
+            List<InAppInboxCache.Entry> inboxEntries;
+            try {
+                inboxEntries = readInboxCacheEntries(db, deliveredIds);
+            } catch (SQLiteException e) {
+                e.printStackTrace();
+                InAppInboxCache.invalidate();
+                return;
+            }
+
+            Set<Integer> removedIds = new HashSet<>(deliveredIds);
+            for (InAppInboxCache.Entry e : inboxEntries) {
+                removedIds.remove(e.item.getId());
+            }
+            removedIds.addAll(deletedIds);
+
+            InAppInboxCache.applySync(inboxEntries, removedIds);
         }
 
         private boolean isInboxUpdated(List<InAppMessage> mInAppMessages, boolean evictedInbox) {
@@ -176,31 +246,132 @@ class InAppContract {
             return syncUpdatedInbox || evictedInbox;
         }
 
-        private List<Integer> insertRows(SQLiteDatabase db, List<ContentValues> rows) {
-            List<Integer> deliveredIds = new ArrayList<>();
+        /**
+         * Updates each row in place, inserting it when no row was touched. Both statements are
+         * compiled once & rebound per row. ON CONFLICT DO UPDATE isn't available on older
+         * platform SQLite versions.
+         *
+         * Optional dates which aren't present in the sync payload keep their stored values.
+         *
+         * @return number of rows inserted, the rest of deliveredIds were updates
+         */
+        private int upsertRows(SQLiteDatabase db, List<ContentValues> rows, List<Integer> deliveredIds) {
+            String updateSql = "UPDATE " + InAppMessageTable.TABLE_NAME + " SET "
+                    + InAppMessageTable.COL_DISMISSED_AT + " = IFNULL(?, " + InAppMessageTable.COL_DISMISSED_AT + "), "
+                    + InAppMessageTable.COL_EXPIRES_AT + " = IFNULL(?, " + InAppMessageTable.COL_EXPIRES_AT + "), "
+                    + InAppMessageTable.COL_READ_AT + " = IFNULL(?, " + InAppMessageTable.COL_READ_AT + "), "
+                    + InAppMessageTable.COL_SENT_AT + " = IFNULL(?, " + InAppMessageTable.COL_SENT_AT + "), "
+                    + InAppMessageTable.COL_UPDATED_AT + " = ?, "
+                    + InAppMessageTable.COL_PRESENTED_WHEN + " = ?, "
+                    + InAppMessageTable.COL_INBOX_CONFIG_JSON + " = ?, "
+                    + InAppMessageTable.COL_INBOX_FROM + " = ?, "
+                    + InAppMessageTable.COL_INBOX_TO + " = ?, "
+                    + InAppMessageTable.COL_BADGE_CONFIG_JSON + " = ?, "
+                    + InAppMessageTable.COL_DATA_JSON + " = ?, "
+                    + InAppMessageTable.COL_CONTENT_JSON + " = ?, "
+                    + InAppMessageTable.COL_EXPIRES_AT_MS + " = IFNULL(?, " + InAppMessageTable.COL_EXPIRES_AT_MS + "), "
+                    + InAppMessageTable.COL_SENT_AT_MS + " = IFNULL(?, " + InAppMessageTable.COL_SENT_AT_MS + "), "
+                    + InAppMessageTable.COL_UPDATED_AT_MS + " = ?, "
+                    + InAppMessageTable.COL_INBOX_FROM_MS + " = ?, "
+                    + InAppMessageTable.COL_INBOX_TO_MS + " = ?"
+                    + " WHERE " + InAppMessageTable.COL_ID + " = ?";
+
+            String insertSql = "INSERT INTO " + InAppMessageTable.TABLE_NAME + " ("
+                    + InAppMessageTable.COL_DISMISSED_AT + ", "
+                    + InAppMessageTable.COL_EXPIRES_AT + ", "
+                    + InAppMessageTable.COL_READ_AT + ", "
+                    + InAppMessageTable.COL_SENT_AT + ", "
+                    + InAppMessageTable.COL_UPDATED_AT + ", "
+                    + InAppMessageTable.COL_PRESENTED_WHEN + ", "
+                    + InAppMessageTable.COL_INBOX_CONFIG_JSON + ", "
+                    + InAppMessageTable.COL_INBOX_FROM + ", "
+                    + InAppMessageTable.COL_INBOX_TO + ", "
+                    + InAppMessageTable.COL_BADGE_CONFIG_JSON + ", "
+                    + InAppMessageTable.COL_DATA_JSON + ", "
+                    + InAppMessageTable.COL_CONTENT_JSON + ", "
+                    + InAppMessageTable.COL_EXPIRES_AT_MS + ", "
+                    + InAppMessageTable.COL_SENT_AT_MS + ", "
+                    + InAppMessageTable.COL_UPDATED_AT_MS + ", "
+                    + InAppMessageTable.COL_INBOX_FROM_MS + ", "
+                    + InAppMessageTable.COL_INBOX_TO_MS + ", "
+                    + InAppMessageTable.COL_ID
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, "
+                    + "IFNULL(?, " + InAppMessageTable.NO_UPPER_BOUND_MS + "), IFNULL(?, " + InAppMessageTable.NO_LOWER_BOUND_MS + "), ?, ?, ?, ?)";
+
+            int insertedCount = 0;
+
+            try (SQLiteStatement update = db.compileStatement(updateSql);
+                 SQLiteStatement insert = db.compileStatement(insertSql)) {
+                for (ContentValues row : rows) {
+                    bindRow(update, row);
+                    if (update.executeUpdateDelete() == 0) {
+                        bindRow(insert, row);
+                        insert.executeInsert();
+                        insertedCount++;
+                    }
 
-            for (ContentValues row : rows) {
-                int id = (int) db.insertWithOnConflict(InAppMessageTable.TABLE_NAME, null, row, CONFLICT_IGNORE);
-                if (id == -1) {
-                    db.update(InAppMessageTable.TABLE_NAME, row, InAppMessageTable.COL_ID + "=?", new String[]{"" + row.getAsInteger(InAppMessageTable.COL_ID)});
+                    //tracks all messages, which were received and saved/updated
+                    deliveredIds.add(row.getAsInteger(InAppMessageTable.COL_ID));
                 }
-                //tracks all messages, which were received and saved/updated
-                deliveredIds.add(row.getAsInteger(InAppMessageTable.COL_ID));
             }
 
-            return deliveredIds;
+            return insertedCount;
+        }
+
+        private void bindRow(SQLiteStatement statement, ContentValues row) {
+            statement.clearBindings();
+
+            bindNullableString(statement, 1, row.getAsString(InAppMessageTable.COL_DISMISSED_AT));
+            bindNullableString(statement, 2, row.getAsString(InAppMessageTable.COL_EXPIRES_AT));
+            bindNullableString(statement, 3, row.getAsString(InAppMessageTable.COL_READ_AT));
+            bindNullableString(statement, 4, row.getAsString(InAppMessageTable.COL_SENT_AT));
+            bindNullableString(statement, 5, row.getAsString(InAppMessageTable.COL_UPDATED_AT));
+            bindNullableString(statement, 6, row.getAsString(InAppMessageTable.COL_PRESENTED_WHEN));
+            bindNullableString(statement, 7, row.getAsString(InAppMessageTable.COL_INBOX_CONFIG_JSON));
+            bindNullableString(statement, 8, row.getAsString(InAppMessageTable.COL_INBOX_FROM));
+            bindNullableString(statement, 9, row.getAsString(InAppMessageTable.COL_INBOX_TO));
+            bindNullableString(statement, 10, row.getAsString(InAppMessageTable.COL_BADGE_CONFIG_JSON));
+            bindNullableString(statement, 11, row.getAsString(InAppMessageTable.COL_DATA_JSON));
+            bindNullableString(statement, 12, row.getAsString(InAppMessageTable.COL_CONTENT_JSON));
+            bindNullableLong(statement, 13, row.getAsLong(InAppMessageTable.COL_EXPIRES_AT_MS));
+            bindNullableLong(statement, 14, row.getAsLong(InAppMessageTable.COL_SENT_AT_MS));
+            statement.bindLong(15, row.getAsLong(InAppMessageTable.COL_UPDATED_AT_MS));
+            statement.bindLong(16, row.getAsLong(InAppMessageTable.COL_INBOX_FROM_MS));
+            statement.bindLong(17, row.getAsLong(InAppMessageTable.COL_INBOX_TO_MS));
+            statement.bindLong(18, row.getAsInteger(InAppMessageTable.COL_ID));
+        }
+
+        private void bindNullableLong(SQLiteStatement statement, int index, @Nullable Long value) {
+            if (value == null) {
+                statement.bindNull(index);
+            } else {
+                statement.bindLong(index, value);
+            }
+        }
+
+        private void bindNullableString(SQLiteStatement statement, int index, @Nullable String value) {
+            if (value == null) {
+                statement.bindNull(index);
+            } else {
+                statement.bindString(index, value);
+            }
         }
 
         private Pair<Boolean, List<Integer>> deleteRows(SQLiteDatabase db) {
-            String messageExpiredCondition = String.format("(%s IS NOT NULL AND (DATETIME(%s) <= DATETIME('now'))",
-                    InAppMessageTable.COL_EXPIRES_AT,
-                    InAppMessageTable.COL_EXPIRES_AT);
-
-            String noInboxAndMessageDismissed = String.format("(%s IS NULL AND %s IS NOT NULL)", InAppMessageTable.COL_INBOX_CONFIG_JSON, InAppMessageTable.COL_DISMISSED_AT);
-            String noInboxAndMessageExpired = String.format("(%s IS NULL AND %s))", InAppMessageTable.COL_INBOX_CONFIG_JSON, messageExpiredCondition);
-            String inboxExpiredAndMessageDismissedOrExpired = String.format("(%s IS NOT NULL AND (DATETIME('now') > IFNULL(%s, '3970-01-01')) AND (%s IS NOT NULL OR %s)))",
-                    InAppMessageTable.COL_INBOX_CONFIG_JSON,
-                    InAppMessageTable.COL_INBOX_TO,
+            // Current epoch millis is bound as ?1
+            String messageExpiredCondition = String.format("(%s <= ?1)", InAppMessageTable.COL_EXPIRES_AT_MS);
+
+            String noInboxAndMessageDismissed = String.format("(%s = %d AND %s IS NOT NULL)",
+                    InAppMessageTable.COL_INBOX_TO_MS,
+                    InAppMessageTable.NO_INBOX_MS,
+                    InAppMessageTable.COL_DISMISSED_AT);
+            String noInboxAndMessageExpired = String.format("(%s = %d AND %s)",
+                    InAppMessageTable.COL_INBOX_TO_MS,
+                    InAppMessageTable.NO_INBOX_MS,
+                    messageExpiredCondition);
+            String inboxExpiredAndMessageDismissedOrExpired = String.format("(%s >= 0 AND %s < ?1 AND (%s IS NOT NULL OR %s))",
+                    InAppMessageTable.COL_INBOX_TO_MS,
+                    InAppMessageTable.COL_INBOX_TO_MS,
                     InAppMessageTable.COL_DISMISSED_AT,
                     messageExpiredCondition);
 
@@ -223,7 +394,7 @@ class InAppContract {
                     " UNION " +
                     inAppsExceedingLimitSql;
 
-            Cursor c = db.rawQuery(readSql, new String[]{});
+            Cursor c = db.rawQuery(readSql, nowArgs());
             List<Integer> deletedIds = new ArrayList<>();
             boolean evictedInbox = false;
             while (c.moveToNext()) {
@@ -263,12 +434,11 @@ class InAppContract {
                 int inAppId = cursor.getInt(cursor.getColumnIndexOrThrow(InAppMessageTable.COL_ID));
                 String presentedWhen = cursor.getString(cursor.getColumnIndexOrThrow(InAppMessageTable.COL_PRESENTED_WHEN));
                 Date readAt = getNullableDate(cursor, InAppMessageTable.COL_READ_AT);
-                JSONObject content = null;
+                String content = cursor.getString(cursor.getColumnIndexOrThrow(InAppMessageTable.COL_CONTENT_JSON));
                 JSONObject inbox = null;
                 JSONObject data = null;
 
                 try {
-                    content = getNullableJsonObject(cursor, InAppMessageTable.COL_CONTENT_JSON);
                     data = getNullableJsonObject(cursor, InAppMessageTable.COL_DATA_JSON);
                     inbox = getNullableJsonObject(cursor, InAppMessageTable.COL_INBOX_CONFIG_JSON);
                 } catch (JSONException e) {
@@ -297,64 +467,69 @@ class InAppContract {
                 Date messageDismissedAt = message.getDismissedAt();
                 if (messageDismissedAt != null || inboxDeletedAt != null) {
                     Date dismissedTime = messageDismissedAt != null ? messageDismissedAt : inboxDeletedAt;
-                    values.put(InAppMessageTable.COL_DISMISSED_AT, dbDateFormat.format(dismissedTime));
+                    values.put(InAppMessageTable.COL_DISMISSED_AT, TimestampCodec.formatDb(dismissedTime));
                 }
 
                 Date expiresAt = message.getExpiresAt();
                 if (expiresAt != null) {
-                    values.put(InAppMessageTable.COL_EXPIRES_AT, dbDateFormat.format(expiresAt));
+                    values.put(InAppMessageTable.COL_EXPIRES_AT, TimestampCodec.formatDb(expiresAt));
+                    values.put(InAppMessageTable.COL_EXPIRES_AT_MS, expiresAt.getTime());
                 }
-                values.put(InAppMessageTable.COL_UPDATED_AT, dbDateFormat.format(message.getUpdatedAt()));
+                values.put(InAppMessageTable.COL_UPDATED_AT, TimestampCodec.formatDb(message.getUpdatedAt()));
+                values.put(InAppMessageTable.COL_UPDATED_AT_MS, message.getUpdatedAt().getTime());
                 values.put(InAppMessageTable.COL_PRESENTED_WHEN, message.getPresentedWhen());
 
                 Date readAt = message.getReadAt();
                 if (readAt != null) {
-                    values.put(InAppMessageTable.COL_READ_AT, dbDateFormat.format(readAt));
+                    values.put(InAppMessageTable.COL_READ_AT, TimestampCodec.formatDb(readAt));
                 }
 
                 Date sentAt = message.getSentAt();
                 if (sentAt != null) {
-                    values.put(InAppMessageTable.COL_SENT_AT, dbDateFormat.format(sentAt));
+                    values.put(InAppMessageTable.COL_SENT_AT, TimestampCodec.formatDb(sentAt));
+                    values.put(InAppMessageTable.COL_SENT_AT_MS, sentAt.getTime());
                 }
 
-                String inboxFrom = null;
-                String inboxTo = null;
+                Date inboxFrom = null;
+                Date inboxTo = null;
                 JSONObject inbox = null;
                 if (inboxDeletedAt == null) {
                     inbox = message.getInbox();
                 }
 
                 if (inbox != null) {
-                    inboxFrom = this.getNullableString(inbox, "from");
-                    if (inboxFrom != null) {
-                        inboxFrom = this.formatDateForDb(inboxFrom);
+                    String from = this.getNullableString(inbox, "from");
+                    if (from != null) {
+                        inboxFrom = TimestampCodec.parseIso8601(from);
                     }
-                    inboxTo = this.getNullableString(inbox, "to");
-                    if (inboxTo != null) {
-                        inboxTo = this.formatDateForDb(inboxTo);
+                    String to = this.getNullableString(inbox, "to");
+                    if (to != null) {
+                        inboxTo = TimestampCodec.parseIso8601(to);
                     }
                 }
 
                 values.put(InAppMessageTable.COL_INBOX_CONFIG_JSON, inbox != null ? inbox.toString() : null);
-                values.put(InAppMessageTable.COL_INBOX_FROM, inboxFrom);
-                values.put(InAppMessageTable.COL_INBOX_TO, inboxTo);
+                values.put(InAppMessageTable.COL_INBOX_FROM, inboxFrom != null ? TimestampCodec.formatDb(inboxFrom) : null);
+                values.put(InAppMessageTable.COL_INBOX_TO, inboxTo != null ? TimestampCodec.formatDb(inboxTo) : null);
+                values.put(InAppMessageTable.COL_INBOX_FROM_MS, inboxFrom != null ? inboxFrom.getTime() : InAppMessageTable.NO_LOWER_BOUND_MS);
+                if (inbox == null) {
+                    values.put(InAppMessageTable.COL_INBOX_TO_MS, InAppMessageTable.NO_INBOX_MS);
+                } else {
+                    values.put(InAppMessageTable.COL_INBOX_TO_MS, inboxTo != null ? inboxTo.getTime() : InAppMessageTable.NO_UPPER_BOUND_MS);
+                }
 
                 JSONObject badge = message.getBadgeConfig();
                 JSONObject data = message.getData();
 
                 values.put(InAppMessageTable.COL_BADGE_CONFIG_JSON, badge != null ? badge.toString() : null);
                 values.put(InAppMessageTable.COL_DATA_JSON, data != null ? data.toString() : null);
-                values.put(InAppMessageTable.COL_CONTENT_JSON, message.getContent().toString());
+                values.put(InAppMessageTable.COL_CONTENT_JSON, message.getContentJson());
                 rows.add(values);
             }
 
             return rows;
         }
 
-        private String formatDateForDb(String date) throws ParseException {
-            return dbDateFormat.format(incomingDateFormat.parse(date));
-        }
-
         private String getNullableString(JSONObject json, String key) {
             if (!json.has(key) || json.isNull(key)) {
                 return null;
@@ -364,125 +539,165 @@ class InAppContract {
         }
     }
 
-    static class ReadInAppInboxCallable implements Callable<List<InAppInboxItem>> {
+    /**
+     * Reads stored inbox messages (within their availability window or not) for the inbox cache,
+     * newest first. Returns null on failure.
+     */
+    static class ReadInboxCacheEntriesCallable implements Callable<List<InAppInboxCache.Entry>> {
 
-        private static final String TAG = ReadInAppInboxCallable.class.getName();
+        private static final String TAG = ReadInboxCacheEntriesCallable.class.getName();
 
         private final Context mContext;
+        @Nullable
+        private final List<Integer> mIds;
 
-        ReadInAppInboxCallable(Context context) {
+        /**
+         * @param ids restricts the read to these messages, or null for all
+         */
+        ReadInboxCacheEntriesCallable(Context context, @Nullable List<Integer> ids) {
             mContext = context.getApplicationContext();
+            mIds = ids;
         }
 
         @Override
-        public List<InAppInboxItem> call() {
-            List<InAppInboxItem> inboxItems = new ArrayList<>();
-            try (SQLiteOpenHelper dbHelper = new InAppDbHelper(mContext)) {
-                SQLiteDatabase db = dbHelper.getReadableDatabase();
-
-                String columnList = InAppMessageTable.COL_ID + ", "
-                        + InAppMessageTable.COL_DISMISSED_AT + ", "
-                        + InAppMessageTable.COL_READ_AT + ", "
-                        + InAppMessageTable.COL_SENT_AT + ", "
-                        + InAppMessageTable.COL_DATA_JSON + ", "
-                        + InAppMessageTable.COL_INBOX_FROM + ", "
-                        + InAppMessageTable.COL_INBOX_TO + ", "
-                        + InAppMessageTable.COL_INBOX_CONFIG_JSON;
-
-                String selectSql = "SELECT " + columnList + " FROM " + InAppMessageTable.TABLE_NAME +
-                        " WHERE " + InAppMessageTable.COL_INBOX_CONFIG_JSON + " IS NOT NULL " +
-                        " AND (datetime('now') BETWEEN IFNULL(" + InAppMessageTable.COL_INBOX_FROM + ", '1970-01-01') AND IFNULL(" + InAppMessageTable.COL_INBOX_TO + ", '3970-01-01'))" +
-                        " ORDER BY " + DESC_SORT_ORDER;
-
-                Cursor cursor = db.rawQuery(selectSql, new String[]{});
-                while (cursor.moveToNext()) {
-                    int inAppId = cursor.getInt(cursor.getColumnIndexOrThrow(InAppMessageTable.COL_ID));
-                    JSONObject inboxConfig = getNullableJsonObject(cursor, InAppMessageTable.COL_INBOX_CONFIG_JSON);
-                    JSONObject data = getNullableJsonObject(cursor, InAppMessageTable.COL_DATA_JSON);
-                    Date availableFrom = getNullableDate(cursor, InAppMessageTable.COL_INBOX_FROM);
-                    Date availableTo = getNullableDate(cursor, InAppMessageTable.COL_INBOX_TO);
-                    Date dismissedAt = getNullableDate(cursor, InAppMessageTable.COL_DISMISSED_AT);
-                    Date readAt = getNullableDate(cursor, InAppMessageTable.COL_READ_AT);
-                    Date sentAt = getNullableDate(cursor, InAppMessageTable.COL_SENT_AT);
-
-                    InAppInboxItem i = new InAppInboxItem();
-                    i.setId(inAppId);
-                    i.setDismissedAt(dismissedAt);
-                    i.setReadAt(readAt);
-                    i.setAvailableTo(availableTo);
-                    i.setAvailableFrom(availableFrom);
-                    i.setSentAt(sentAt);
-                    i.setData(data);
-
-                    if (inboxConfig != null) {
-                        i.setTitle(inboxConfig.getString("title"));
-                        i.setSubtitle(inboxConfig.getString("subtitle"));
-                        if (!inboxConfig.isNull("imagePath")) {
-                            i.setImagePath(inboxConfig.getString("imagePath"));
-                        }
-                    }
-
-                    inboxItems.add(i);
-                }
-                cursor.close();
+        public List<InAppInboxCache.Entry> call() {
+            long startedAt = SdkMetrics.now();
+            try {
+                SQLiteOpenHelper dbHelper = InAppDbHelper.getInstance(mContext);
+                List<InAppInboxCache.Entry> entries = readInboxCacheEntries(dbHelper.getReadableDatabase(), mIds);
+                SdkMetrics.dbOperation(SdkMetrics.DB_IN_APP, "readInbox", startedAt);
+
+                return entries;
             } catch (SQLiteException e) {
                 e.printStackTrace();
             } catch (Exception e) {
                 Kumulos.log(TAG, e.getMessage());
             }
 
-            return inboxItems;
+            return null;
         }
     }
 
-    static class ReadInAppInboxMessageCallable implements Callable<InAppMessage> {
-        private static final String TAG = ReadInAppInboxMessageCallable.class.getName();
+    static class ReadAssetSourcesCallable implements Callable<List<InAppAssetCache.MessageSource>> {
+
+        private static final String TAG = ReadAssetSourcesCallable.class.getName();
 
         private final Context mContext;
-        private final int mId;
 
-        ReadInAppInboxMessageCallable(Context context, int id) {
+        ReadAssetSourcesCallable(Context context) {
             mContext = context.getApplicationContext();
-            mId = id;
         }
 
+        /**
+         * @return Content of messages which may still be shown, or null on failure
+         */
         @Override
-        public InAppMessage call() {
-            InAppMessage inboxMessage = null;
-            try (SQLiteOpenHelper dbHelper = new InAppDbHelper(mContext)) {
-                SQLiteDatabase db = dbHelper.getReadableDatabase();
+        public List<InAppAssetCache.MessageSource> call() {
+            List<InAppAssetCache.MessageSource> sources = new ArrayList<>();
 
-                String[] projection = {
-                        InAppMessageTable.COL_ID,
-                        InAppMessageTable.COL_CONTENT_JSON,
-                        InAppMessageTable.COL_DATA_JSON,
-                        InAppMessageTable.COL_READ_AT,
-                        InAppMessageTable.COL_INBOX_CONFIG_JSON
-                };
-                String selection = InAppMessageTable.COL_INBOX_CONFIG_JSON + " IS NOT NULL AND " + InAppMessageTable.COL_ID + " = ?";
-                String[] selectionArgs = {mId + ""};
+            try {
+                SQLiteOpenHelper dbHelper = InAppDbHelper.getInstance(mContext);
+                SQLiteDatabase db = dbHelper.getReadableDatabase();
 
-                Cursor cursor = db.query(InAppMessageTable.TABLE_NAME, projection, selection, selectionArgs, null, null, null);
+                String[] projection = {InAppMessageTable.COL_CONTENT_JSON, InAppMessageTable.COL_EXPIRES_AT_MS};
+                String selection = InAppMessageTable.COL_EXPIRES_AT_MS + " > ?1 AND ("
+                        + InAppMessageTable.COL_DISMISSED_AT + " IS NULL OR "
+                        + InAppMessageTable.COL_INBOX_TO_MS + " >= ?1)";
 
-                if (cursor.moveToFirst()) {
-                    inboxMessage = new InAppMessage(mId,
-                            getNullableJsonObject(cursor, InAppMessageTable.COL_CONTENT_JSON),
-                            getNullableJsonObject(cursor, InAppMessageTable.COL_DATA_JSON),
-                            getNullableJsonObject(cursor, InAppMessageTable.COL_INBOX_CONFIG_JSON),
-                            getNullableDate(cursor, InAppMessageTable.COL_READ_AT));
+                Cursor cursor = db.query(InAppMessageTable.TABLE_NAME, projection, selection, nowArgs(), null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        sources.add(new InAppAssetCache.MessageSource(
+                                cursor.getString(cursor.getColumnIndexOrThrow(InAppMessageTable.COL_CONTENT_JSON)),
+                                cursor.getLong(cursor.getColumnIndexOrThrow(InAppMessageTable.COL_EXPIRES_AT_MS))));
+                    }
+                } finally {
+                    cursor.close();
                 }
 
-                cursor.close();
+                return sources;
             } catch (SQLiteException e) {
                 e.printStackTrace();
             } catch (Exception e) {
                 Kumulos.log(TAG, e.getMessage());
             }
 
-            return inboxMessage;
+            return null;
         }
     }
 
+    /**
+     * Rows with a malformed inbox config or date are skipped, so one bad message doesn't hide the
+     * rest of the inbox
+     */
+    static List<InAppInboxCache.Entry> readInboxCacheEntries(SQLiteDatabase db, @Nullable List<Integer> ids) {
+        List<InAppInboxCache.Entry> entries = new ArrayList<>();
+
+        String columnList = InAppMessageTable.COL_ID + ", "
+                + InAppMessageTable.COL_DISMISSED_AT + ", "
+                + InAppMessageTable.COL_READ_AT + ", "
+                + InAppMessageTable.COL_SENT_AT + ", "
+                + InAppMessageTable.COL_SENT_AT_MS + ", "
+                + InAppMessageTable.COL_UPDATED_AT_MS + ", "
+                + InAppMessageTable.COL_DATA_JSON + ", "
+                + InAppMessageTable.COL_CONTENT_JSON + ", "
+                + InAppMessageTable.COL_INBOX_FROM + ", "
+                + InAppMessageTable.COL_INBOX_TO + ", "
+                + InAppMessageTable.COL_INBOX_CONFIG_JSON;
+
+        String selectSql = "SELECT " + columnList + " FROM " + InAppMessageTable.TABLE_NAME +
+                " WHERE " + InAppMessageTable.COL_INBOX_TO_MS + " > " + InAppMessageTable.NO_INBOX_MS;
+
+        if (ids != null) {
+            if (ids.isEmpty()) {
+                return entries;
+            }
+            selectSql += " AND " + InAppMessageTable.COL_ID + " IN (" + TextUtils.join(",", ids) + ")";
+        }
+
+        selectSql += " ORDER BY " + DESC_SORT_ORDER;
+
+        Cursor cursor = db.rawQuery(selectSql, new String[]{});
+        try {
+            while (cursor.moveToNext()) {
+                int inAppId = cursor.getInt(cursor.getColumnIndexOrThrow(InAppMessageTable.COL_ID));
+                try {
+                    JSONObject inboxConfig = getNullableJsonObject(cursor, InAppMessageTable.COL_INBOX_CONFIG_JSON);
+                    String content = cursor.getString(cursor.getColumnIndexOrThrow(InAppMessageTable.COL_CONTENT_JSON));
+                    JSONObject data = getNullableJsonObject(cursor, InAppMessageTable.COL_DATA_JSON);
+
+                    if (inboxConfig == null || content == null) {
+                        continue;
+                    }
+
+                    InAppInboxItem i = new InAppInboxItem();
+                    i.setId(inAppId);
+                    i.setDismissedAt(getNullableDate(cursor, InAppMessageTable.COL_DISMISSED_AT));
+                    i.setReadAt(getNullableDate(cursor, InAppMessageTable.COL_READ_AT));
+                    i.setAvailableTo(getNullableDate(cursor, InAppMessageTable.COL_INBOX_TO));
+                    i.setAvailableFrom(getNullableDate(cursor, InAppMessageTable.COL_INBOX_FROM));
+                    i.setSentAt(getNullableDate(cursor, InAppMessageTable.COL_SENT_AT));
+                    i.setData(data);
+                    i.setTitle(inboxConfig.getString("title"));
+                    i.setSubtitle(inboxConfig.getString("subtitle"));
+                    if (!inboxConfig.isNull("imagePath")) {
+                        i.setImagePath(inboxConfig.getString("imagePath"));
+                    }
+
+                    entries.add(new InAppInboxCache.Entry(i, content, inboxConfig, data,
+                            cursor.getLong(cursor.getColumnIndexOrThrow(InAppMessageTable.COL_SENT_AT_MS)),
+                            cursor.getLong(cursor.getColumnIndexOrThrow(InAppMessageTable.COL_UPDATED_AT_MS))));
+                } catch (JSONException | ParseException e) {
+                    Kumulos.log("Skipping malformed inbox message " + inAppId + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return entries;
+    }
+
     static class DeleteInAppInboxMessageCallable implements Callable<Boolean> {
 
         private static final String TAG = DeleteInAppInboxMessageCallable.class.getName();
@@ -497,15 +712,18 @@ class InAppContract {
 
         @Override
         public Boolean call() {
-            try (SQLiteOpenHelper dbHelper = new InAppDbHelper(mContext)) {
+            try {
+                SQLiteOpenHelper dbHelper = InAppDbHelper.getInstance(mContext);
                 SQLiteDatabase db = dbHelper.getWritableDatabase();
 
                 ContentValues values = new ContentValues();
                 values.putNull(InAppMessageTable.COL_INBOX_FROM);
                 values.putNull(InAppMessageTable.COL_INBOX_TO);
                 values.putNull(InAppMessageTable.COL_INBOX_CONFIG_JSON);
-                values.put(InAppMessageTable.COL_DISMISSED_AT, dbDateFormat.format(new Date()));
-                values.put(InAppMessageTable.COL_READ_AT, dbDateFormat.format(new Date()));
+                values.put(InAppMessageTable.COL_INBOX_FROM_MS, InAppMessageTable.NO_LOWER_BOUND_MS);
+                values.put(InAppMessageTable.COL_INBOX_TO_MS, InAppMessageTable.NO_INBOX_MS);
+                values.put(InAppMessageTable.COL_DISMISSED_AT, TimestampCodec.formatDb(new Date()));
+                values.put(InAppMessageTable.COL_READ_AT, TimestampCodec.formatDb(new Date()));
 
                 String selection = InAppMessageTable.COL_ID + " = ?";
                 String[] selectionArgs = {mId + ""};
@@ -515,6 +733,8 @@ class InAppContract {
                 if (count == 0) {
                     return false;
                 }
+
+                InAppInboxCache.remove(mId);
             } catch (SQLiteException e) {
                 Kumulos.log(TAG, "Failed to delete inbox message with inAppID: " + mId);
                 e.printStackTrace();
@@ -539,11 +759,13 @@ class InAppContract {
 
         @Override
         public Boolean call() {
-            try (SQLiteOpenHelper dbHelper = new InAppDbHelper(mContext)) {
+            try {
+                SQLiteOpenHelper dbHelper = InAppDbHelper.getInstance(mContext);
                 SQLiteDatabase db = dbHelper.getWritableDatabase();
 
+                Date readAt = new Date();
                 ContentValues values = new ContentValues();
-                values.put(InAppMessageTable.COL_READ_AT, dbDateFormat.format(new Date()));
+                values.put(InAppMessageTable.COL_READ_AT, TimestampCodec.formatDb(readAt));
 
                 String selection = InAppMessageTable.COL_ID + " = ? AND " + InAppMessageTable.COL_READ_AT + " IS NULL";
                 String[] selectionArgs = {mId + ""};
@@ -553,6 +775,8 @@ class InAppContract {
                 if (count == 0) {
                     return false;
                 }
+
+                InAppInboxCache.markRead(Collections.singletonList(mId), readAt);
             } catch (SQLiteException e) {
                 Kumulos.log(TAG, "Failed to set readAt of inbox message with inAppID: " + mId);
                 e.printStackTrace();
@@ -563,47 +787,60 @@ class InAppContract {
         }
     }
 
-    static class ReadInboxSummaryRunnable implements Runnable {
+    /**
+     * Marks every unread, currently visible inbox message as read in one transaction, returning
+     * the IDs which were marked (or null on failure)
+     */
+    static class MarkAllInAppInboxMessagesAsReadCallable implements Callable<List<Integer>> {
+
+        private static final String TAG = MarkAllInAppInboxMessagesAsReadCallable.class.getName();
 
-        private static final String TAG = ReadInboxSummaryRunnable.class.getName();
         private final Context mContext;
-        private final KumulosInApp.InAppInboxSummaryHandler callback;
 
-        ReadInboxSummaryRunnable(Context context, KumulosInApp.InAppInboxSummaryHandler callback) {
+        MarkAllInAppInboxMessagesAsReadCallable(Context context) {
             mContext = context.getApplicationContext();
-            this.callback = callback;
         }
 
         @Override
-        public void run() {
-            InAppInboxSummary summary = null;
-            try (SQLiteOpenHelper dbHelper = new InAppDbHelper(mContext)) {
-                SQLiteDatabase db = dbHelper.getReadableDatabase();
+        public List<Integer> call() {
+            List<Integer> markedIds = new ArrayList<>();
+            Date readAt = new Date();
 
-                String selectSql = "SELECT COUNT(*) as totalCount, SUM(isUnread) as unreadCount FROM " +
-                        "(SELECT CASE WHEN " + InAppMessageTable.COL_READ_AT + " IS NULL THEN 1 ELSE 0 END AS isUnread " +
-                        " FROM " + InAppMessageTable.TABLE_NAME +
-                        " WHERE " + InAppMessageTable.COL_INBOX_CONFIG_JSON + " IS NOT NULL " +
-                        " AND (datetime('now') BETWEEN IFNULL(" + InAppMessageTable.COL_INBOX_FROM + ", '1970-01-01') AND IFNULL(" + InAppMessageTable.COL_INBOX_TO + ", '3970-01-01'))" +
-                        ") as sub";
+            try {
+                SQLiteOpenHelper dbHelper = InAppDbHelper.getInstance(mContext);
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+                // Equivalent of UPDATE ... RETURNING, which isn't available on older SQLite versions
+                db.beginTransaction();
+                try {
+                    Cursor cursor = db.rawQuery("SELECT " + InAppMessageTable.COL_ID + " FROM " + InAppMessageTable.TABLE_NAME
+                            + " WHERE " + INBOX_VISIBLE_CONDITION + " AND " + InAppMessageTable.COL_READ_AT + " IS NULL", nowArgs());
+                    while (cursor.moveToNext()) {
+                        markedIds.add(cursor.getInt(0));
+                    }
+                    cursor.close();
+
+                    if (!markedIds.isEmpty()) {
+                        ContentValues values = new ContentValues();
+                        values.put(InAppMessageTable.COL_READ_AT, TimestampCodec.formatDb(readAt));
 
-                Cursor cursor = db.rawQuery(selectSql, new String[]{});
-                cursor.moveToNext();
-                int totalCount = cursor.getInt(cursor.getColumnIndexOrThrow("totalCount"));
-                int unreadCount = cursor.getInt(cursor.getColumnIndexOrThrow("unreadCount"));
-                cursor.close();
+                        String selection = InAppMessageTable.COL_ID + " IN (" + TextUtils.join(",", markedIds) + ")";
+                        db.update(InAppMessageTable.TABLE_NAME, values, selection, null);
+                    }
 
-                summary = new InAppInboxSummary(totalCount, unreadCount);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+
+                InAppInboxCache.markRead(markedIds, readAt);
             } catch (SQLiteException e) {
-                Kumulos.log(TAG, "Failed to read inbox summary");
+                Kumulos.log(TAG, "Failed to mark all inbox messages as read");
                 e.printStackTrace();
+                return null;
             }
 
-            this.fireCallback(summary);
-        }
-
-        private void fireCallback(InAppInboxSummary summary) {
-            Kumulos.handler.post(() -> ReadInboxSummaryRunnable.this.callback.run(summary));
+            return markedIds;
         }
     }
-}
\ No newline at end of file
+}
@@ -9,7 +9,7 @@ import com.kumulos.android.InAppContract.InAppMessageTable;
 
 class InAppDbHelper extends SQLiteOpenHelper {
     private static final String DB_NAME = "k_in_app.db";
-    private static final int DB_VERSION = 4;
+    private static final int DB_VERSION = 5;
 
     private static final String SQL_CREATE_IN_APP_MESSAGES
             = "CREATE TABLE " + InAppMessageTable.TABLE_NAME + "("
@@ -25,16 +25,63 @@ class InAppDbHelper extends SQLiteOpenHelper {
             + InAppMessageTable.COL_UPDATED_AT + " DATETIME NOT NULL,"
             + InAppMessageTable.COL_EXPIRES_AT + " DATETIME,"
             + InAppMessageTable.COL_READ_AT + " DATETIME,"
-            + InAppMessageTable.COL_SENT_AT + " DATETIME)";
+            + InAppMessageTable.COL_SENT_AT + " DATETIME,"
+            + InAppMessageTable.COL_EXPIRES_AT_MS + " INTEGER NOT NULL DEFAULT " + InAppMessageTable.NO_UPPER_BOUND_MS + ","
+            + InAppMessageTable.COL_INBOX_FROM_MS + " INTEGER NOT NULL DEFAULT " + InAppMessageTable.NO_LOWER_BOUND_MS + ","
+            + InAppMessageTable.COL_INBOX_TO_MS + " INTEGER NOT NULL DEFAULT " + InAppMessageTable.NO_INBOX_MS + ","
+            + InAppMessageTable.COL_SENT_AT_MS + " INTEGER NOT NULL DEFAULT " + InAppMessageTable.NO_LOWER_BOUND_MS + ","
+            + InAppMessageTable.COL_UPDATED_AT_MS + " INTEGER NOT NULL DEFAULT 0)";
 
-    InAppDbHelper(Context context) {
+    // Pending messages to present, walked in updatedAt order
+    private static final String SQL_CREATE_PRESENTABLE_INDEX
+            = "CREATE INDEX " + InAppMessageTable.INDEX_PRESENTABLE + " ON " + InAppMessageTable.TABLE_NAME + "("
+            + InAppMessageTable.COL_DISMISSED_AT + ", "
+            + InAppMessageTable.COL_UPDATED_AT_MS + ", "
+            + InAppMessageTable.COL_EXPIRES_AT_MS + ")";
+
+    // Visible inbox window, also covers the inbox summary & the inbox eviction conditions
+    private static final String SQL_CREATE_INBOX_INDEX
+            = "CREATE INDEX " + InAppMessageTable.INDEX_INBOX + " ON " + InAppMessageTable.TABLE_NAME + "("
+            + InAppMessageTable.COL_INBOX_TO_MS + ", "
+            + InAppMessageTable.COL_INBOX_FROM_MS + ", "
+            + InAppMessageTable.COL_READ_AT + ")";
+
+    // Sync re-read & eviction over the stored limit, both ordered by sentAt
+    private static final String SQL_CREATE_SENT_ORDER_INDEX
+            = "CREATE INDEX " + InAppMessageTable.INDEX_SENT_ORDER + " ON " + InAppMessageTable.TABLE_NAME + "("
+            + InAppMessageTable.COL_SENT_AT_MS + ", "
+            + InAppMessageTable.COL_UPDATED_AT_MS + ")";
+
+    private static InAppDbHelper instance;
+
+    private InAppDbHelper(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
+        // Lets inbox reads run alongside writes on the shared connection pool
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Returns the process-wide helper for the in-app DB.
+     *
+     * Sharing one helper means the create / upgrade runs once, rather than on each lane's own
+     * connection at the same time. Callers must not close the helper or the database it returns.
+     *
+     * @param context
+     * @return
+     */
+    static synchronized InAppDbHelper getInstance(Context context) {
+        if (null == instance) {
+            instance = new InAppDbHelper(context.getApplicationContext());
+        }
+
+        return instance;
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         try {
             db.execSQL(SQL_CREATE_IN_APP_MESSAGES);
+            this.createIndexes(db);
         } catch (SQLException e) {
             Kumulos.log("Failed to create in app table");
             e.printStackTrace();
@@ -55,6 +102,9 @@ class InAppDbHelper extends SQLiteOpenHelper {
                 case 4:
                     this.upgradeToVersion4(db);
                     break;
+                case 5:
+                    this.upgradeToVersion5(db);
+                    break;
                 default:
                     throw new IllegalStateException("onUpgrade() with unknown newVersion " + newVersion);
             }
@@ -76,4 +126,36 @@ class InAppDbHelper extends SQLiteOpenHelper {
                 " SET " + InAppMessageTable.COL_SENT_AT + " = " + InAppMessageTable.COL_UPDATED_AT +
                 " WHERE " + InAppMessageTable.COL_SENT_AT + " IS NULL ");
     }
+
+    private void upgradeToVersion5(SQLiteDatabase db) {
+        String table = InAppMessageTable.TABLE_NAME;
+
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + InAppMessageTable.COL_EXPIRES_AT_MS + " INTEGER NOT NULL DEFAULT " + InAppMessageTable.NO_UPPER_BOUND_MS);
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + InAppMessageTable.COL_INBOX_FROM_MS + " INTEGER NOT NULL DEFAULT " + InAppMessageTable.NO_LOWER_BOUND_MS);
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + InAppMessageTable.COL_INBOX_TO_MS + " INTEGER NOT NULL DEFAULT " + InAppMessageTable.NO_INBOX_MS);
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + InAppMessageTable.COL_SENT_AT_MS + " INTEGER NOT NULL DEFAULT " + InAppMessageTable.NO_LOWER_BOUND_MS);
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + InAppMessageTable.COL_UPDATED_AT_MS + " INTEGER NOT NULL DEFAULT 0");
+
+        // Stored dates are UTC "yyyy-MM-dd HH:mm:ss", which strftime reads as UTC
+        db.execSQL("UPDATE " + table + " SET "
+                + InAppMessageTable.COL_EXPIRES_AT_MS + " = IFNULL(" + epochMillis(InAppMessageTable.COL_EXPIRES_AT) + ", " + InAppMessageTable.NO_UPPER_BOUND_MS + "), "
+                + InAppMessageTable.COL_INBOX_FROM_MS + " = IFNULL(" + epochMillis(InAppMessageTable.COL_INBOX_FROM) + ", " + InAppMessageTable.NO_LOWER_BOUND_MS + "), "
+                + InAppMessageTable.COL_INBOX_TO_MS + " = CASE"
+                + " WHEN " + InAppMessageTable.COL_INBOX_CONFIG_JSON + " IS NULL THEN " + InAppMessageTable.NO_INBOX_MS
+                + " ELSE IFNULL(" + epochMillis(InAppMessageTable.COL_INBOX_TO) + ", " + InAppMessageTable.NO_UPPER_BOUND_MS + ") END, "
+                + InAppMessageTable.COL_SENT_AT_MS + " = IFNULL(" + epochMillis(InAppMessageTable.COL_SENT_AT) + ", " + InAppMessageTable.NO_LOWER_BOUND_MS + "), "
+                + InAppMessageTable.COL_UPDATED_AT_MS + " = IFNULL(" + epochMillis(InAppMessageTable.COL_UPDATED_AT) + ", 0)");
+
+        this.createIndexes(db);
+    }
+
+    private void createIndexes(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_PRESENTABLE_INDEX);
+        db.execSQL(SQL_CREATE_INBOX_INDEX);
+        db.execSQL(SQL_CREATE_SENT_ORDER_INDEX);
+    }
+
+    private static String epochMillis(String column) {
+        return "CAST(strftime('%s', " + column + ") AS INTEGER) * 1000";
+    }
 }
\ No newline at end of file
@@ -0,0 +1,316 @@
+package com.kumulos.android;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Write-through in-memory copy of the stored inbox messages.
+ *
+ * Loaded from the DB on first read, then kept current by the in-app DB writers once their changes
+ * are committed. Readers get immutable snapshots, so inbox & summary reads don't touch SQLite.
+ * Changes are published before the inbox updated handler runs, so handlers see the new state.
+ */
+final class InAppInboxCache {
+
+    private static final Object lock = new Object();
+    // null until loaded
+    private static volatile Snapshot snapshot;
+    // Bumped on every change, so a load racing with a write won't install stale rows
+    private static long version = 0;
+
+    private InAppInboxCache() {
+    }
+
+    static final class Entry {
+        final InAppInboxItem item;
+        final String contentJson;
+        final JSONObject inbox;
+        @Nullable
+        final JSONObject data;
+        final long sentAtMillis;
+        final long updatedAtMillis;
+
+        Entry(InAppInboxItem item, String contentJson, JSONObject inbox, @Nullable JSONObject data, long sentAtMillis, long updatedAtMillis) {
+            this.item = item;
+            this.contentJson = contentJson;
+            this.inbox = inbox;
+            this.data = data;
+            this.sentAtMillis = sentAtMillis;
+            this.updatedAtMillis = updatedAtMillis;
+        }
+
+        Entry withItem(InAppInboxItem item) {
+            return new Entry(item, contentJson, inbox, data, sentAtMillis, updatedAtMillis);
+        }
+
+        InAppMessage toMessage() {
+            return new InAppMessage(item.getId(), contentJson, data, inbox, item.getReadAt());
+        }
+    }
+
+    static final Snapshot EMPTY = new Snapshot(new ArrayList<>());
+
+    private static final Comparator<Entry> NEWEST_FIRST = (a, b) -> {
+        if (a.sentAtMillis != b.sentAtMillis) {
+            return a.sentAtMillis > b.sentAtMillis ? -1 : 1;
+        }
+        if (a.updatedAtMillis != b.updatedAtMillis) {
+            return a.updatedAtMillis > b.updatedAtMillis ? -1 : 1;
+        }
+        return Integer.compare(b.item.getId(), a.item.getId());
+    };
+
+    static final class Snapshot {
+        private final List<Entry> entries;
+        private final Map<Integer, Entry> entriesById;
+        private volatile VisibleView visibleView;
+
+        private Snapshot(List<Entry> entries) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.entriesById = new HashMap<>(entries.size());
+            for (Entry e : entries) {
+                entriesById.put(e.item.getId(), e);
+            }
+        }
+
+        /**
+         * @return Inbox items currently inside their availability window, newest first
+         */
+        List<InAppInboxItem> getVisibleItems() {
+            return getVisibleView(System.currentTimeMillis()).items;
+        }
+
+        InAppInboxSummary getSummary() {
+            VisibleView view = getVisibleView(System.currentTimeMillis());
+
+            return new InAppInboxSummary(view.items.size(), view.unreadCount);
+        }
+
+        @Nullable
+        Entry get(int id) {
+            return entriesById.get(id);
+        }
+
+        // Visibility only changes when an item's window opens or closes, so a computed view is
+        // reused until the next such boundary
+        private VisibleView getVisibleView(long now) {
+            VisibleView view = visibleView;
+            if (view != null && now >= view.validFrom && now < view.validUntil) {
+                return view;
+            }
+
+            List<InAppInboxItem> items = new ArrayList<>();
+            int unreadCount = 0;
+            long validUntil = Long.MAX_VALUE;
+
+            for (Entry e : entries) {
+                Date from = e.item.getAvailableFrom();
+                Date to = e.item.getAvailableTo();
+                long fromMillis = from == null ? Long.MIN_VALUE : from.getTime();
+                long toMillis = to == null ? Long.MAX_VALUE : to.getTime();
+
+                if (fromMillis > now) {
+                    validUntil = Math.min(validUntil, fromMillis);
+                    continue;
+                }
+
+                if (toMillis < now) {
+                    continue;
+                }
+
+                if (toMillis != Long.MAX_VALUE) {
+                    validUntil = Math.min(validUntil, toMillis + 1);
+                }
+
+                items.add(e.item);
+                if (!e.item.isRead()) {
+                    unreadCount++;
+                }
+            }
+
+            view = new VisibleView(Collections.unmodifiableList(items), unreadCount, now, validUntil);
+            visibleView = view;
+
+            return view;
+        }
+    }
+
+    private static final class VisibleView {
+        final List<InAppInboxItem> items;
+        final int unreadCount;
+        final long validFrom;
+        final long validUntil;
+
+        VisibleView(List<InAppInboxItem> items, int unreadCount, long validFrom, long validUntil) {
+            this.items = items;
+            this.unreadCount = unreadCount;
+            this.validFrom = validFrom;
+            this.validUntil = validUntil;
+        }
+    }
+
+    //==============================================================================================
+    //-- Reads
+
+    /**
+     * @return The current snapshot, or null if it hasn't been loaded yet
+     */
+    @Nullable
+    static Snapshot peek() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the current snapshot, loading it from the DB on the calling thread if needed
+     */
+    @NonNull
+    static Snapshot get(Context context) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+
+        long loadVersion = currentVersion();
+
+        List<Entry> entries = new InAppContract.ReadInboxCacheEntriesCallable(context, null).call();
+        if (entries == null) {
+            // Don't cache a failed load, the next read will retry
+            return EMPTY;
+        }
+
+        return install(entries, loadVersion);
+    }
+
+    static long currentVersion() {
+        synchronized (lock) {
+            return version;
+        }
+    }
+
+    /**
+     * Publishes loaded entries unless there were changes since the load started, in which case
+     * they're returned without caching & the next read loads again
+     */
+    @NonNull
+    static Snapshot install(@NonNull List<Entry> entries, long loadVersion) {
+        Snapshot loaded = new Snapshot(entries);
+        synchronized (lock) {
+            if (snapshot != null) {
+                return snapshot;
+            }
+
+            if (version == loadVersion) {
+                snapshot = loaded;
+            }
+        }
+
+        return loaded;
+    }
+
+    //==============================================================================================
+    //-- Writes, called once the matching DB change is committed
+
+    static void applySync(@NonNull List<Entry> updatedEntries, @NonNull Collection<Integer> removedIds) {
+        synchronized (lock) {
+            version++;
+            Snapshot current = snapshot;
+            if (current == null) {
+                return;
+            }
+
+            Set<Integer> replacedIds = new HashSet<>(removedIds);
+            for (Entry e : updatedEntries) {
+                replacedIds.add(e.item.getId());
+            }
+
+            List<Entry> entries = new ArrayList<>(current.entries.size() + updatedEntries.size());
+            for (Entry e : current.entries) {
+                if (!replacedIds.contains(e.item.getId())) {
+                    entries.add(e);
+                }
+            }
+            entries.addAll(updatedEntries);
+            Collections.sort(entries, NEWEST_FIRST);
+
+            snapshot = new Snapshot(entries);
+        }
+    }
+
+    static void remove(int id) {
+        applySync(new ArrayList<>(), Collections.singletonList(id));
+    }
+
+    static void markRead(@NonNull Collection<Integer> ids, @NonNull Date readAt) {
+        updateItems(ids, readAt, null);
+    }
+
+    static void markDismissed(int id, @NonNull Date dismissedAt) {
+        updateItems(Collections.singletonList(id), dismissedAt, dismissedAt);
+    }
+
+    /**
+     * Drops the loaded snapshot when it can't be brought up to date, so the next read reloads
+     */
+    static void invalidate() {
+        synchronized (lock) {
+            version++;
+            snapshot = null;
+        }
+    }
+
+    static void clear() {
+        synchronized (lock) {
+            version++;
+            snapshot = new Snapshot(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Copies the given items with readAt set (unless already read) & optionally dismissedAt,
+     * leaving published items untouched
+     */
+    private static void updateItems(Collection<Integer> ids, Date readAt, @Nullable Date dismissedAt) {
+        synchronized (lock) {
+            version++;
+            Snapshot current = snapshot;
+            if (current == null) {
+                return;
+            }
+
+            Set<Integer> idSet = new HashSet<>(ids);
+            List<Entry> entries = new ArrayList<>(current.entries.size());
+            for (Entry e : current.entries) {
+                if (!idSet.contains(e.item.getId())) {
+                    entries.add(e);
+                    continue;
+                }
+
+                InAppInboxItem item = e.item.copy();
+                if (!item.isRead()) {
+                    item.setReadAt(readAt);
+                }
+                if (dismissedAt != null) {
+                    item.setDismissedAt(dismissedAt);
+                }
+                entries.add(e.withItem(item));
+            }
+
+            snapshot = new Snapshot(entries);
+        }
+    }
+}
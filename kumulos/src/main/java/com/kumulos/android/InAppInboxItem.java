@@ -88,6 +88,11 @@ public class InAppInboxItem {
         return readAt != null;
     }
 
+    @Nullable
+    Date getReadAt() {
+        return readAt;
+    }
+
     void setReadAt(@Nullable Date readAt) {
         this.readAt = readAt;
     }
@@ -113,6 +118,22 @@ public class InAppInboxItem {
         this.imagePath = imagePath;
     }
 
+    InAppInboxItem copy() {
+        InAppInboxItem i = new InAppInboxItem();
+        i.id = id;
+        i.title = title;
+        i.subtitle = subtitle;
+        i.availableFrom = availableFrom;
+        i.availableTo = availableTo;
+        i.dismissedAt = dismissedAt;
+        i.readAt = readAt;
+        i.sentAt = sentAt;
+        i.data = data;
+        i.imagePath = imagePath;
+
+        return i;
+    }
+
     public @Nullable
     URL getImageUrl() {
         return this.getImageUrl(DEFAULT_IMAGE_WIDTH);
@@ -3,22 +3,23 @@ package com.kumulos.android;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
 
 import androidx.annotation.Nullable;
 
 class InAppMessage {
+    private static final String TAG = InAppMessage.class.getName();
+
     private String presentedWhen;
     private final int inAppId;
     @Nullable
     private JSONObject badgeConfig;
     @Nullable
     private JSONObject data;
-    private final JSONObject content;
+    // Kept as JSON text, only parsed when the message is presented
+    private final String contentJson;
+    @Nullable
+    private JSONObject content;
     @Nullable
     private final JSONObject inbox;
     @Nullable
@@ -35,51 +36,36 @@ class InAppMessage {
     private Date sentAt;
 
 
-    InAppMessage(JSONObject obj) throws JSONException, ParseException {
-        this.inAppId = obj.getInt("id");
-        this.presentedWhen = obj.getString("presentedWhen");
-        this.data = obj.optJSONObject("data");
-        this.badgeConfig = obj.optJSONObject("badge");
-        this.content = obj.getJSONObject("content");
-        this.inbox = obj.optJSONObject("inbox");
-
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-        this.updatedAt = sdf.parse(obj.getString("updatedAt"));
-
-        if (!obj.isNull("openedAt")) {
-            this.dismissedAt = sdf.parse(obj.getString("openedAt"));
-        }
-
-        if (!obj.isNull("expiresAt")) {
-            this.expiresAt = sdf.parse(obj.getString("expiresAt"));
-        }
-
-        if (!obj.isNull("inboxDeletedAt")) {
-            this.inboxDeletedAt = sdf.parse(obj.getString("inboxDeletedAt"));
-        }
-
-        if (!obj.isNull("readAt")) {
-            this.readAt = sdf.parse(obj.getString("readAt"));
-        }
-
-        if (!obj.isNull("sentAt")) {
-            this.sentAt = sdf.parse(obj.getString("sentAt"));
-        }
+    InAppMessage(int inAppId, String presentedWhen, String contentJson, @Nullable JSONObject data,
+                 @Nullable JSONObject badgeConfig, @Nullable JSONObject inbox, Date updatedAt,
+                 @Nullable Date dismissedAt, @Nullable Date expiresAt, @Nullable Date inboxDeletedAt,
+                 @Nullable Date readAt, @Nullable Date sentAt) {
+        this.inAppId = inAppId;
+        this.presentedWhen = presentedWhen;
+        this.contentJson = contentJson;
+        this.data = data;
+        this.badgeConfig = badgeConfig;
+        this.inbox = inbox;
+        this.updatedAt = updatedAt;
+        this.dismissedAt = dismissedAt;
+        this.expiresAt = expiresAt;
+        this.inboxDeletedAt = inboxDeletedAt;
+        this.readAt = readAt;
+        this.sentAt = sentAt;
     }
 
-    InAppMessage(int inAppId, String presentedWhen, JSONObject content, @Nullable JSONObject data, @Nullable JSONObject inbox, @Nullable Date readAt) {
+    InAppMessage(int inAppId, String presentedWhen, String contentJson, @Nullable JSONObject data, @Nullable JSONObject inbox, @Nullable Date readAt) {
         this.inAppId = inAppId;
         this.presentedWhen = presentedWhen;
-        this.content = content;
+        this.contentJson = contentJson;
         this.data = data;
         this.inbox = inbox;
         this.readAt = readAt;
     }
 
-    InAppMessage(int inAppId, JSONObject content, @Nullable JSONObject data, @Nullable JSONObject inbox, @Nullable Date readAt) {
+    InAppMessage(int inAppId, String contentJson, @Nullable JSONObject data, @Nullable JSONObject inbox, @Nullable Date readAt) {
         this.inAppId = inAppId;
-        this.content = content;
+        this.contentJson = contentJson;
         this.data = data;
         this.inbox = inbox;
         this.readAt = readAt;
@@ -103,7 +89,23 @@ class InAppMessage {
         return data;
     }
 
+    String getContentJson() {
+        return contentJson;
+    }
+
+    /**
+     * Parses the content on first use, messages are only presented from the main thread
+     */
     JSONObject getContent() {
+        if (content == null) {
+            try {
+                content = new JSONObject(contentJson);
+            } catch (JSONException e) {
+                Kumulos.log(TAG, e.getMessage());
+                content = new JSONObject();
+            }
+        }
+
         return content;
     }
 
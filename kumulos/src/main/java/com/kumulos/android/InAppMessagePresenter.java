@@ -24,9 +24,12 @@ class InAppMessagePresenter implements AppStateWatcher.AppStateChangedListener {
     private Activity currentActivity;
     @Nullable
     private InAppMessageView view;
+    @Nullable
+    private final InAppWebViewPool webViewPool;
 
-    InAppMessagePresenter(Context context) {
+    InAppMessagePresenter(Context context, boolean prewarmWebViews) {
         this.context = context.getApplicationContext();
+        this.webViewPool = prewarmWebViews ? new InAppWebViewPool(this.context) : null;
         KumulosInitProvider.getAppStateWatcher().registerListener(this);
     }
 
@@ -58,10 +61,15 @@ class InAppMessagePresenter implements AppStateWatcher.AppStateChangedListener {
         }
 
         presentMessageToClient();
+        maybePrewarmWebView();
     }
 
     @Override
     public void activityUnavailable(@NonNull Activity activity) {
+        if (webViewPool != null) {
+            webViewPool.activityUnavailable(activity);
+        }
+
         if (!KumulosInApp.isInAppEnabled()) {
             return;
         }
@@ -94,6 +102,7 @@ class InAppMessagePresenter implements AppStateWatcher.AppStateChangedListener {
     void messageClosed() {
         if (messageQueue.isEmpty()) {
             disposeView();
+            maybePrewarmWebView();
             return;
         }
 
@@ -129,7 +138,16 @@ class InAppMessagePresenter implements AppStateWatcher.AppStateChangedListener {
         if (null == currentActivity) {
             return;
         }
-        view = new InAppMessageView(this, currentMessage, currentActivity);
+        view = new InAppMessageView(this, webViewPool, currentMessage, currentActivity);
+    }
+
+    @UiThread
+    private void maybePrewarmWebView() {
+        if (webViewPool == null || view != null || currentActivity == null) {
+            return;
+        }
+
+        webViewPool.prewarm(currentActivity);
     }
 
     @UiThread
@@ -27,30 +27,60 @@ class InAppMessageService {
     private static final String PRESENTED_WHEN_IMMEDIATELY = "immediately";
     private static final String PRESENTED_WHEN_NEXT_OPEN = "next-open";
 
+    // Guarded by itself, added to on the DB lane & consumed by fetches
     private static final List<Integer> pendingTickleIds = new ArrayList<>();
+    // Serializes fetches from the in-app sync lane with those from the sync worker
+    private static final Object fetchLock = new Object();
 
     static void clearAllMessages(Context context) {
         Runnable task = new InAppContract.ClearDbRunnable(context);
         Kumulos.executorService.submit(task);
     }
 
+    /**
+     * Fetches on the in-app sync lane
+     */
+    static void fetchAsync(Context context, boolean includeNextOpen) {
+        Kumulos.inAppSyncExecutor.submit(() -> {
+            fetch(context, includeNextOpen);
+        });
+    }
+
     static boolean fetch(Context context, boolean includeNextOpen) {
+        synchronized (fetchLock) {
+            return fetchLocked(context, includeNextOpen);
+        }
+    }
+
+    private static boolean fetchLocked(Context context, boolean includeNextOpen) {
         SharedPreferences preferences = context.getSharedPreferences(SharedPrefs.PREFS_FILE, Context.MODE_PRIVATE);
         long millis = preferences.getLong(SharedPrefs.IN_APP_LAST_SYNC_TIME, 0L);
         Date lastSyncTime = millis == 0 ? null : new Date(millis);
 
-        List<InAppMessage> inAppMessages = InAppRequestService.readInAppMessages(context, lastSyncTime);
-        if (inAppMessages == null) {
+        InAppSyncResponse response = InAppRequestService.readInAppMessages(context, lastSyncTime);
+        if (response == null) {
             return false;
         }
 
-        showFetchedMessages(context, inAppMessages, includeNextOpen);
+        // Nothing changed, so no need to touch the DB
+        if (response.wasNotModified()) {
+            return true;
+        }
+
+        boolean persisted = showFetchedMessages(context, response.getMessages(), includeNextOpen);
+        if (persisted) {
+            InAppRequestService.storeSyncValidator(context, response);
+        }
+
         return true;
     }
 
-    private static void showFetchedMessages(Context context, List<InAppMessage> inAppMessages, boolean includeNextOpen) {
+    /**
+     * @return Whether the fetched messages were saved (or there were none to save)
+     */
+    private static boolean showFetchedMessages(Context context, List<InAppMessage> inAppMessages, boolean includeNextOpen) {
         if (inAppMessages.isEmpty()) {
-            return;
+            return true;
         }
 
         for (InAppMessage message : inAppMessages) {
@@ -66,14 +96,20 @@ class InAppMessageService {
         List<Integer> deletedIds;
         boolean inboxUpdated = false;
         try {
-            InAppSaveResult result = task.call();
+            // Hop onto the DB lane so writes stay ordered with other in-app DB work, unless already on it
+            InAppSaveResult result = Kumulos.executorService.ownsCurrentThread()
+                    ? task.call()
+                    : Kumulos.executorService.submit(task).get();
+            if (result == null) {
+                return false;
+            }
             unreadMessages = result.getItemsToPresent();
             deliveredIds = result.getDeliveredIds();
             deletedIds = result.getDeletedIds();
             inboxUpdated = result.wasInboxUpdated();
         } catch (Exception e) {
             e.printStackTrace();
-            return;
+            return false;
         }
 
         for (int inAppId : deletedIds) {
@@ -86,10 +122,15 @@ class InAppMessageService {
 
         trackDeliveredEvents(context, deliveredIds);
 
+        List<Integer> tickleIds;
+        synchronized (pendingTickleIds) {
+            tickleIds = new ArrayList<>(pendingTickleIds);
+        }
+
         List<InAppMessage> itemsToPresent = new ArrayList<>();
         for (InAppMessage message : unreadMessages) {
             boolean hasPendingTickleId = false;
-            for (Integer pendingTickleId : pendingTickleIds) {
+            for (Integer pendingTickleId : tickleIds) {
                 if (message.getInAppId() == pendingTickleId) {
                     hasPendingTickleId = true;
                     break;
@@ -102,9 +143,14 @@ class InAppMessageService {
             }
         }
 
-        KumulosInApp.presenter.presentMessages(itemsToPresent, new ArrayList<>(pendingTickleIds));
+        KumulosInApp.presentMessages(itemsToPresent, tickleIds);
+
+        // Tickles which arrived during the fetch stay pending for the next one
+        synchronized (pendingTickleIds) {
+            pendingTickleIds.removeAll(tickleIds);
+        }
 
-        pendingTickleIds.clear();
+        return true;
     }
 
     private static void trackDeliveredEvents(Context context, List<Integer> deliveredIds) {
@@ -144,9 +190,7 @@ class InAppMessageService {
         }
 
         if (shouldFetch) {
-            Kumulos.executorService.submit(() -> {
-                InAppMessageService.fetch(context, fromBackground);
-            });
+            fetchAsync(context, fromBackground);
         }
     }
 
@@ -218,32 +262,68 @@ class InAppMessageService {
     }
 
     static List<InAppInboxItem> readInboxItems(Context context) {
-        Callable<List<InAppInboxItem>> task = new InAppContract.ReadInAppInboxCallable(context);
-        final Future<List<InAppInboxItem>> future = Kumulos.executorService.submit(task);
+        return new ArrayList<>(getInboxSnapshot(context).getVisibleItems());
+    }
 
-        List<InAppInboxItem> inboxItems;
-        try {
-            inboxItems = future.get();
-        } catch (InterruptedException | ExecutionException ex) {
+    static void readInboxItemsAsync(Context context, @NonNull KumulosInApp.InAppInboxItemsHandler handler) {
+        withInboxSnapshot(context, snapshot -> {
+            List<InAppInboxItem> inboxItems = new ArrayList<>(snapshot.getVisibleItems());
+            Kumulos.handler.post(() -> handler.run(inboxItems));
+        });
+    }
+
+    static void readInboxSummaryAsync(Context context, @NonNull KumulosInApp.InAppInboxSummaryHandler handler) {
+        withInboxSnapshot(context, snapshot -> {
+            InAppInboxSummary summary = snapshot.getSummary();
+            Kumulos.handler.post(() -> handler.run(summary));
+        });
+    }
 
-            return new ArrayList<>();
+    private interface InboxSnapshotConsumer {
+        void accept(InAppInboxCache.Snapshot snapshot);
+    }
+
+    /**
+     * Runs the consumer right away when the inbox cache is loaded, otherwise loads it on the
+     * DB read lane first
+     */
+    private static void withInboxSnapshot(Context context, InboxSnapshotConsumer consumer) {
+        InAppInboxCache.Snapshot snapshot = InAppInboxCache.peek();
+        if (snapshot != null) {
+            consumer.accept(snapshot);
+            return;
         }
 
-        return inboxItems;
+        Kumulos.dbReadExecutor.submit(() -> consumer.accept(InAppInboxCache.get(context)));
     }
 
-    static KumulosInApp.InboxMessagePresentationResult presentMessage(Context context, InAppInboxItem item) {
-        Callable<InAppMessage> task = new InAppContract.ReadInAppInboxMessageCallable(context, item.getId());
-        final Future<InAppMessage> future = Kumulos.executorService.submit(task);
+    private static InAppInboxCache.Snapshot getInboxSnapshot(Context context) {
+        InAppInboxCache.Snapshot snapshot = InAppInboxCache.peek();
+        if (snapshot != null) {
+            return snapshot;
+        }
 
-        InAppMessage inboxMessage;
+        final Future<InAppInboxCache.Snapshot> future = Kumulos.dbReadExecutor.submit(() -> InAppInboxCache.get(context));
         try {
-            inboxMessage = future.get();
+            return future.get();
         } catch (InterruptedException | ExecutionException ex) {
-            return KumulosInApp.InboxMessagePresentationResult.FAILED;
+            return InAppInboxCache.EMPTY;
         }
+    }
+
+    static KumulosInApp.InboxMessagePresentationResult presentMessage(Context context, InAppInboxItem item) {
+        return presentInboxMessage(item, getInboxSnapshot(context).get(item.getId()));
+    }
+
+    static void presentMessageAsync(Context context, InAppInboxItem item, @NonNull KumulosInApp.InAppInboxPresentationHandler handler) {
+        withInboxSnapshot(context, snapshot -> {
+            KumulosInApp.InboxMessagePresentationResult result = presentInboxMessage(item, snapshot.get(item.getId()));
+            Kumulos.handler.post(() -> handler.run(result));
+        });
+    }
 
-        if (inboxMessage == null) {
+    private static KumulosInApp.InboxMessagePresentationResult presentInboxMessage(InAppInboxItem item, @Nullable InAppInboxCache.Entry inboxEntry) {
+        if (inboxEntry == null) {
             return KumulosInApp.InboxMessagePresentationResult.FAILED;
         }
 
@@ -252,25 +332,15 @@ class InAppMessageService {
         }
 
         List<InAppMessage> itemsToPresent = new ArrayList<>();
-        itemsToPresent.add(inboxMessage);
+        itemsToPresent.add(inboxEntry.toMessage());
 
-        KumulosInApp.presenter.presentMessages(itemsToPresent, null);
+        KumulosInApp.presentMessages(itemsToPresent, null);
 
         return KumulosInApp.InboxMessagePresentationResult.PRESENTED;
     }
 
     static boolean deleteMessageFromInbox(Context context, int id) {
-        JSONObject params = new JSONObject();
-        try {
-            params.put("type", AnalyticsContract.MESSAGE_TYPE_IN_APP);
-            params.put("id", id);
-
-            Kumulos.trackEvent(context, AnalyticsContract.MESSAGE_DELETED_FROM_INBOX, params);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-
-        clearNotification(context, id);
+        trackInboxMessageDeleted(context, id);
 
         Callable<Boolean> task = new InAppContract.DeleteInAppInboxMessageCallable(context, id);
         final Future<Boolean> future = Kumulos.executorService.submit(task);
@@ -287,6 +357,34 @@ class InAppMessageService {
         return result;
     }
 
+    static void deleteMessageFromInboxAsync(Context context, int id, @Nullable KumulosInApp.InAppInboxResultHandler handler) {
+        trackInboxMessageDeleted(context, id);
+
+        Callable<Boolean> task = new InAppContract.DeleteInAppInboxMessageCallable(context, id);
+
+        Kumulos.executorService.submit(() -> {
+            boolean result = task.call();
+
+            KumulosInApp.maybeRunInboxUpdatedHandler(result);
+            postResult(handler, result);
+            return null;
+        });
+    }
+
+    private static void trackInboxMessageDeleted(Context context, int id) {
+        JSONObject params = new JSONObject();
+        try {
+            params.put("type", AnalyticsContract.MESSAGE_TYPE_IN_APP);
+            params.put("id", id);
+
+            Kumulos.trackEvent(context, AnalyticsContract.MESSAGE_DELETED_FROM_INBOX, params);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        clearNotification(context, id);
+    }
+
     static boolean markInboxItemRead(Context context, int id, boolean shouldWaitForResult) {
         Callable<Boolean> task = new InAppContract.MarkInAppInboxMessageAsReadCallable(context, id);
         final Future<Boolean> future = Kumulos.executorService.submit(task);
@@ -304,6 +402,27 @@ class InAppMessageService {
             return result;
         }
 
+        handleInboxItemMarkedRead(context, id);
+
+        return result;
+    }
+
+    static void markInboxItemReadAsync(Context context, int id, @Nullable KumulosInApp.InAppInboxResultHandler handler) {
+        Callable<Boolean> task = new InAppContract.MarkInAppInboxMessageAsReadCallable(context, id);
+
+        Kumulos.executorService.submit(() -> {
+            boolean result = task.call();
+            if (result) {
+                handleInboxItemMarkedRead(context, id);
+            }
+
+            KumulosInApp.maybeRunInboxUpdatedHandler(result);
+            postResult(handler, result);
+            return null;
+        });
+    }
+
+    private static void handleInboxItemMarkedRead(Context context, int id) {
         JSONObject params = new JSONObject();
         try {
             params.put("type", AnalyticsContract.MESSAGE_TYPE_IN_APP);
@@ -315,32 +434,72 @@ class InAppMessageService {
         }
 
         clearNotification(context, id);
+    }
 
-        return result;
+    private static void postResult(@Nullable KumulosInApp.InAppInboxResultHandler handler, boolean result) {
+        if (handler == null) {
+            return;
+        }
+
+        Kumulos.handler.post(() -> handler.run(result));
     }
 
     static boolean markAllInboxItemsAsRead(Context context) {
-        List<InAppInboxItem> inboxItems = readInboxItems(context);
-        boolean result = true;
-        boolean inboxNeedsUpdate = false;
-        for (InAppInboxItem item : inboxItems) {
-            if (item.isRead()) {
+        Callable<List<Integer>> task = new InAppContract.MarkAllInAppInboxMessagesAsReadCallable(context);
+        final Future<List<Integer>> future = Kumulos.executorService.submit(task);
+
+        List<Integer> markedIds = null;
+        try {
+            markedIds = future.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            Kumulos.log(TAG, ex.getMessage());
+        }
+
+        return handleInboxItemsMarkedRead(context, markedIds);
+    }
+
+    static void markAllInboxItemsAsReadAsync(Context context, @Nullable KumulosInApp.InAppInboxResultHandler handler) {
+        Callable<List<Integer>> task = new InAppContract.MarkAllInAppInboxMessagesAsReadCallable(context);
+
+        Kumulos.executorService.submit(() -> {
+            boolean result = handleInboxItemsMarkedRead(context, task.call());
+            postResult(handler, result);
+            return null;
+        });
+    }
+
+    private static boolean handleInboxItemsMarkedRead(Context context, @Nullable List<Integer> markedIds) {
+        if (markedIds == null) {
+            return false;
+        }
+
+        if (markedIds.isEmpty()) {
+            return true;
+        }
+
+        List<JSONObject> eventProps = new ArrayList<>(markedIds.size());
+        for (int id : markedIds) {
+            JSONObject params = new JSONObject();
+            try {
+                params.put("type", AnalyticsContract.MESSAGE_TYPE_IN_APP);
+                params.put("id", id);
+            } catch (JSONException e) {
+                e.printStackTrace();
                 continue;
             }
+            eventProps.add(params);
+        }
 
-            boolean success = markInboxItemRead(context, item.getId(), true);
-            if (success && !inboxNeedsUpdate) {
-                inboxNeedsUpdate = true;
-            }
+        Kumulos.trackEvents(context, AnalyticsContract.EVENT_TYPE_MESSAGE_READ, eventProps);
 
-            if (!success) {
-                result = false;
-            }
+        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        for (int id : markedIds) {
+            notificationManager.cancel(PushBroadcastReceiver.KUMULOS_NOTIFICATION_TAG, id);
         }
 
-        KumulosInApp.maybeRunInboxUpdatedHandler(inboxNeedsUpdate);
+        KumulosInApp.maybeRunInboxUpdatedHandler(true);
 
-        return result;
+        return true;
     }
 
     private static class ReadAndPresentMessagesRunnable implements Runnable {
@@ -380,13 +539,15 @@ class InAppMessageService {
                 }
 
                 if (!tickleMessageFound) {
-                    pendingTickleIds.add(tickleId);
+                    synchronized (pendingTickleIds) {
+                        pendingTickleIds.add(tickleId);
+                    }
                 } else {
                     tickleIds.add(tickleId);
                 }
             }
 
-            KumulosInApp.presenter.presentMessages(itemsToPresent, tickleIds);
+            KumulosInApp.presentMessages(itemsToPresent, tickleIds);
 
             // TODO potential bug? logic in here doesn't take into account the pending tickles
             //      in prod builds if synced < 1hr ago, may not sync again? (although assumed sync happens on app startup so...)
@@ -396,7 +557,8 @@ class InAppMessageService {
 
         private List<InAppMessage> getMessagesToPresent() {
             List<InAppMessage> itemsToPresent = new ArrayList<>();
-            try (SQLiteOpenHelper dbHelper = new InAppDbHelper(mContext)) {
+            try {
+                SQLiteOpenHelper dbHelper = InAppDbHelper.getInstance(mContext);
                 SQLiteDatabase db = dbHelper.getReadableDatabase();
 
                 String[] projection = {
@@ -407,14 +569,13 @@ class InAppMessageService {
                         InAppContract.InAppMessageTable.COL_READ_AT,
                         InAppContract.InAppMessageTable.COL_INBOX_CONFIG_JSON
                 };
-                String selection = String.format("%s IS NULL AND (%s IS NULL OR (DATETIME(%s) > DATETIME('now')))",
+                String selection = String.format("%s IS NULL AND %s > ?",
                         InAppContract.InAppMessageTable.COL_DISMISSED_AT,
-                        InAppContract.InAppMessageTable.COL_EXPIRES_AT,
-                        InAppContract.InAppMessageTable.COL_EXPIRES_AT);
+                        InAppContract.InAppMessageTable.COL_EXPIRES_AT_MS);
 
-                String sortOrder = InAppContract.InAppMessageTable.COL_UPDATED_AT + " ASC";
+                String sortOrder = InAppContract.InAppMessageTable.COL_UPDATED_AT_MS + " ASC";
 
-                Cursor cursor = db.query(InAppContract.InAppMessageTable.TABLE_NAME, projection, selection, null, null, null, sortOrder);
+                Cursor cursor = db.query(InAppContract.InAppMessageTable.TABLE_NAME, projection, selection, InAppContract.nowArgs(), null, null, sortOrder);
 
                 while (cursor.moveToNext()) {
                     int inAppId = cursor.getInt(cursor.getColumnIndexOrThrow(InAppContract.InAppMessageTable.COL_ID));
@@ -424,7 +585,7 @@ class InAppMessageService {
                     Date readAt = InAppContract.getNullableDate(cursor, InAppContract.InAppMessageTable.COL_READ_AT);
                     JSONObject inbox = InAppContract.getNullableJsonObject(cursor, InAppContract.InAppMessageTable.COL_INBOX_CONFIG_JSON);
 
-                    InAppMessage m = new InAppMessage(inAppId, presentedWhen, new JSONObject(content), data, inbox, readAt);
+                    InAppMessage m = new InAppMessage(inAppId, presentedWhen, content, data, inbox, readAt);
                     itemsToPresent.add(m);
                 }
                 cursor.close();
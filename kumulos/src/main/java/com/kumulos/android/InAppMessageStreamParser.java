@@ -0,0 +1,243 @@
+package com.kumulos.android;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Decodes the in-app sync response token by token, straight from the response stream.
+ *
+ * Avoids holding the whole body as a string plus a JSONArray / JSONObject tree of it. Message
+ * content, usually the bulk of the payload, is kept as compact JSON text ready for storage rather
+ * than being parsed into a JSONObject.
+ */
+final class InAppMessageStreamParser {
+
+    private InAppMessageStreamParser() {
+    }
+
+    static List<InAppMessage> parse(Reader source) throws IOException, ParseException, JSONException {
+        List<InAppMessage> messages = new ArrayList<>();
+
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                messages.add(readMessage(reader));
+            }
+            reader.endArray();
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader reports unexpected tokens this way
+            throw new JSONException(e.getMessage());
+        }
+
+        return messages;
+    }
+
+    private static InAppMessage readMessage(JsonReader reader) throws IOException, ParseException, JSONException {
+        Integer id = null;
+        String presentedWhen = null;
+        String contentJson = null;
+        JSONObject data = null;
+        JSONObject badge = null;
+        JSONObject inbox = null;
+        Date updatedAt = null;
+        Date openedAt = null;
+        Date expiresAt = null;
+        Date inboxDeletedAt = null;
+        Date readAt = null;
+        Date sentAt = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "id":
+                    id = reader.nextInt();
+                    break;
+                case "presentedWhen":
+                    presentedWhen = reader.nextString();
+                    break;
+                case "content":
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        throw new JSONException("In-app message content is not an object");
+                    }
+                    contentJson = readRawObject(reader);
+                    break;
+                case "data":
+                    data = readNullableObject(reader);
+                    break;
+                case "badge":
+                    badge = readNullableObject(reader);
+                    break;
+                case "inbox":
+                    inbox = readNullableObject(reader);
+                    break;
+                case "updatedAt":
+                    updatedAt = readNullableDate(reader);
+                    break;
+                case "openedAt":
+                    openedAt = readNullableDate(reader);
+                    break;
+                case "expiresAt":
+                    expiresAt = readNullableDate(reader);
+                    break;
+                case "inboxDeletedAt":
+                    inboxDeletedAt = readNullableDate(reader);
+                    break;
+                case "readAt":
+                    readAt = readNullableDate(reader);
+                    break;
+                case "sentAt":
+                    sentAt = readNullableDate(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (id == null || presentedWhen == null || contentJson == null || updatedAt == null) {
+            throw new JSONException("In-app message is missing required fields");
+        }
+
+        return new InAppMessage(id, presentedWhen, contentJson, data, badge, inbox,
+                updatedAt, openedAt, expiresAt, inboxDeletedAt, readAt, sentAt);
+    }
+
+    @Nullable
+    private static Date readNullableDate(JsonReader reader) throws IOException, ParseException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        return TimestampCodec.parseIso8601(reader.nextString());
+    }
+
+    /**
+     * Objects are returned as JSONObject, anything else is skipped as null
+     */
+    @Nullable
+    private static JSONObject readNullableObject(JsonReader reader) throws IOException, JSONException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        return new JSONObject(readRawObject(reader));
+    }
+
+    private static String readRawObject(JsonReader reader) throws IOException {
+        StringBuilder out = new StringBuilder();
+        copyValue(reader, out);
+
+        return out.toString();
+    }
+
+    //==============================================================================================
+    //-- Re-encoding
+
+    private static void copyValue(JsonReader reader, StringBuilder out) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                out.append('{');
+                boolean firstMember = true;
+                while (reader.hasNext()) {
+                    if (!firstMember) {
+                        out.append(',');
+                    }
+                    firstMember = false;
+
+                    writeString(out, reader.nextName());
+                    out.append(':');
+                    copyValue(reader, out);
+                }
+                reader.endObject();
+                out.append('}');
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                out.append('[');
+                boolean firstElement = true;
+                while (reader.hasNext()) {
+                    if (!firstElement) {
+                        out.append(',');
+                    }
+                    firstElement = false;
+
+                    copyValue(reader, out);
+                }
+                reader.endArray();
+                out.append(']');
+                break;
+            case STRING:
+                writeString(out, reader.nextString());
+                break;
+            case NUMBER:
+                // The number's literal text, so precision is kept as sent
+                out.append(reader.nextString());
+                break;
+            case BOOLEAN:
+                out.append(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                out.append("null");
+                break;
+            default:
+                throw new IllegalStateException("Unexpected token " + reader.peek());
+        }
+    }
+
+    private static void writeString(StringBuilder out, String value) {
+        out.append('"');
+
+        for (int i = 0, len = value.length(); i < len; ++i) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\u2028':
+                case '\u2029':
+                    // Valid JSON but not valid JS, and content is handed to the renderer as script
+                    out.append(String.format("\\u%04x", (int) c));
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                    break;
+            }
+        }
+
+        out.append('"');
+    }
+}
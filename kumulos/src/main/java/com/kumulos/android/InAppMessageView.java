@@ -10,6 +10,7 @@ import android.graphics.Rect;
 import android.net.Uri;
 import android.net.http.SslError;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.Pair;
@@ -18,6 +19,7 @@ import android.view.DisplayCutout;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.view.Window;
 import android.view.WindowInsets;
 import android.view.WindowManager;
@@ -69,10 +71,12 @@ class InAppMessageView extends WebViewClient {
     private static final String HOST_MESSAGE_TYPE_CLOSE_MESSAGE = "CLOSE_MESSAGE";
     private static final String HOST_MESSAGE_TYPE_SET_NOTCH_INSETS = "SET_NOTCH_INSETS";
 
-    private static final String JS_NAME = "Android";
+    static final String JS_NAME = "Android";
 
     private State state;
     private boolean pageFinished;
+    private boolean prewarmed;
+    private long presentationStartedAt;
 
     @NonNull
     private final Activity currentActivity;
@@ -90,14 +94,19 @@ class InAppMessageView extends WebViewClient {
 
     @NonNull
     private final InAppMessagePresenter presenter;
+    @Nullable
+    private final InAppWebViewPool webViewPool;
     @NonNull
     private InAppMessage currentMessage;
 
     @UiThread
-    InAppMessageView(@NonNull InAppMessagePresenter presenter, @NonNull InAppMessage message, @NonNull Activity currentActivity) {
+    InAppMessageView(@NonNull InAppMessagePresenter presenter, @Nullable InAppWebViewPool webViewPool, @NonNull InAppMessage message, @NonNull Activity currentActivity) {
         this.state = State.INITIAL;
         pageFinished = false;
+        prewarmed = false;
+        presentationStartedAt = SystemClock.elapsedRealtime();
         this.presenter = presenter;
+        this.webViewPool = webViewPool;
         this.currentActivity = currentActivity;
         this.currentMessage = message;
 
@@ -111,6 +120,7 @@ class InAppMessageView extends WebViewClient {
         }
 
         currentMessage = message;
+        presentationStartedAt = SystemClock.elapsedRealtime();
         sendCurrentMessageToClient();
     }
 
@@ -229,14 +239,10 @@ class InAppMessageView extends WebViewClient {
         spinner = null;
     }
 
-    @SuppressLint({"SetJavaScriptEnabled", "AddJavascriptInterface", "InflateParams"})
+    @SuppressLint({"AddJavascriptInterface", "InflateParams"})
     @UiThread
     private void showWebView(@NonNull final Activity currentActivity) {
         try {
-            if (BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                WebView.setWebContentsDebuggingEnabled(true);
-            }
-
             RelativeLayout.LayoutParams paramsWebView = new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.MATCH_PARENT, RelativeLayout.LayoutParams.MATCH_PARENT);
             dialog = new Dialog(currentActivity, android.R.style.Theme_Translucent_NoTitleBar_Fullscreen);
 
@@ -249,8 +255,20 @@ class InAppMessageView extends WebViewClient {
                 view.setSystemUiVisibility(View.SYSTEM_UI_FLAG_LAYOUT_STABLE | View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN);
             }
 
+            InAppWebViewPool.WarmWebView warm = null;
+            if (webViewPool != null) {
+                warm = webViewPool.acquire(currentActivity);
+            }
+
             LayoutInflater inflater = (LayoutInflater) currentActivity.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-            dialog.setContentView(inflater.inflate(R.layout.kumulos_dialog_view, null), paramsWebView);
+            if (warm != null) {
+                ViewGroup root = (ViewGroup) inflater.inflate(R.layout.kumulos_dialog_view_prewarmed, null);
+                // First child, so the spinner is drawn above it
+                root.addView(warm.webView, 0, new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.MATCH_PARENT, RelativeLayout.LayoutParams.MATCH_PARENT));
+                dialog.setContentView(root, paramsWebView);
+            } else {
+                dialog.setContentView(inflater.inflate(R.layout.kumulos_dialog_view, null), paramsWebView);
+            }
             dialog.setOnKeyListener((dialog, keyCode, event) -> {
                 if (keyCode == KeyEvent.KEYCODE_BACK && event.getAction() != KeyEvent.ACTION_DOWN) {
                     closeCurrentMessage();
@@ -258,7 +276,7 @@ class InAppMessageView extends WebViewClient {
                 return true;
             });
 
-            wv = dialog.findViewById(R.id.kumulos_webview);
+            wv = warm != null ? warm.webView : dialog.findViewById(R.id.kumulos_webview);
             spinner = dialog.findViewById(R.id.kumulos_progressBar);
 
             if (null == wv || null == spinner) {
@@ -266,20 +284,12 @@ class InAppMessageView extends WebViewClient {
                 return;
             }
 
-            int cacheMode = WebSettings.LOAD_DEFAULT;
-            if (BuildConfig.DEBUG) {
-                cacheMode = WebSettings.LOAD_NO_CACHE;
-            }
-            wv.getSettings().setCacheMode(cacheMode);
-
-            wv.setBackgroundColor(android.graphics.Color.TRANSPARENT);
-
-            WebSettings settings = wv.getSettings();
-            settings.setJavaScriptEnabled(true);
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-                settings.setMediaPlaybackRequiresUserGesture(false);
+            if (warm != null) {
+                showPrewarmedWebView(warm);
+                return;
             }
 
+            configureWebView(wv);
             wv.addJavascriptInterface(this, JS_NAME);
             wv.setWebViewClient(this);
 
@@ -297,6 +307,92 @@ class InAppMessageView extends WebViewClient {
         }
     }
 
+    /**
+     * Takes over a WebView which may already have loaded the renderer. Whatever it missed whilst
+     * off-screen is caught up on once the dialog is attached.
+     */
+    @UiThread
+    private void showPrewarmedWebView(@NonNull InAppWebViewPool.WarmWebView warm) {
+        prewarmed = true;
+        wv.setWebViewClient(this);
+
+        boolean pageFinishedOnAttach = warm.pageFinished;
+        boolean readyOnAttach = warm.bridge.attach(this);
+        pageFinished = pageFinishedOnAttach;
+        state = readyOnAttach ? State.READY : State.LOADING;
+
+        dialog.show();
+        setSpinnerVisibility(View.VISIBLE);
+
+        wv.post(() -> {
+            if (state == State.DISPOSED) {
+                return;
+            }
+
+            if (pageFinishedOnAttach) {
+                setStatusBarColorForDialog(currentActivity);
+            }
+
+            if (readyOnAttach) {
+                maybeSetNotchInsets(currentActivity);
+            }
+
+            // Otherwise onPageFinished or the READY message will send it
+            if (pageFinishedOnAttach && readyOnAttach) {
+                sendCurrentMessageToClient();
+            }
+        });
+    }
+
+    @SuppressLint("SetJavaScriptEnabled")
+    @UiThread
+    static void configureWebView(@NonNull WebView wv) {
+        if (BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            WebView.setWebContentsDebuggingEnabled(true);
+        }
+
+        int cacheMode = WebSettings.LOAD_DEFAULT;
+        if (BuildConfig.DEBUG) {
+            cacheMode = WebSettings.LOAD_NO_CACHE;
+        }
+        wv.getSettings().setCacheMode(cacheMode);
+
+        wv.setBackgroundColor(android.graphics.Color.TRANSPARENT);
+
+        WebSettings settings = wv.getSettings();
+        settings.setJavaScriptEnabled(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            settings.setMediaPlaybackRequiresUserGesture(false);
+        }
+    }
+
+    /**
+     * Logs the time from the message being handed to this view until the renderer has drawn it
+     */
+    @UiThread
+    private void reportFirstPaint() {
+        final int messageId = currentMessage.getInAppId();
+        final long startedAt = presentationStartedAt;
+
+        if (wv != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            // Completes once the opened message is drawn on screen
+            wv.postVisualStateCallback(messageId, new WebView.VisualStateCallback() {
+                @Override
+                public void onComplete(long requestId) {
+                    logFirstPaint(messageId, startedAt);
+                }
+            });
+            return;
+        }
+
+        logFirstPaint(messageId, startedAt);
+    }
+
+    private void logFirstPaint(int messageId, long startedAt) {
+        long elapsed = SystemClock.elapsedRealtime() - startedAt;
+        Kumulos.log(TAG, "In-app message " + messageId + " first paint after " + elapsed + "ms" + (prewarmed ? " (pre-warmed WebView)" : ""));
+    }
+
     private void closeCurrentMessage() {
         sendToClient(HOST_MESSAGE_TYPE_CLOSE_MESSAGE, null);
         InAppMessageService.handleMessageClosed(currentActivity, currentMessage);
@@ -330,11 +426,27 @@ class InAppMessageView extends WebViewClient {
         // Evict the cache to allow next presentation to re-fetch
         if (404 == errorResponse.getStatusCode()) {
             view.clearCache(true);
+            InAppAssetCache.clearInBackground(currentActivity.getApplicationContext());
         }
 
         closeDialog(currentActivity);
     }
 
+    @Override
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return null;
+        }
+
+        return InAppAssetCache.read(currentActivity.getApplicationContext(), request.getUrl().toString());
+    }
+
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+        return InAppAssetCache.read(currentActivity.getApplicationContext(), url);
+    }
+
     @Override
     public void onReceivedSslError(WebView view, SslErrorHandler handler, SslError error) {
         handler.cancel();
@@ -409,6 +521,7 @@ class InAppMessageView extends WebViewClient {
                     }
 
                     setSpinnerVisibility(View.GONE);
+                    reportFirstPaint();
                     InAppMessageService.handleMessageOpened(currentActivity, currentMessage);
                 });
                 return;
@@ -1,20 +1,18 @@
 package com.kumulos.android;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.net.Uri;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 
 import java.io.IOException;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
-import java.util.TimeZone;
 
+import androidx.annotation.Nullable;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -23,12 +21,20 @@ class InAppRequestService {
 
     private static final String TAG = InAppRequestService.class.getName();
 
-    static List<InAppMessage> readInAppMessages(Context c, Date lastSyncTime) {
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    /**
+     * Sends the stored ETag / Last-Modified validators when they belong to the same sync URL, so
+     * unchanged polls come back as an empty 304 instead of a body to download & parse
+     *
+     * @return null on failure
+     */
+    static InAppSyncResponse readInAppMessages(Context c, Date lastSyncTime) {
         OkHttpClient httpClient;
         String userIdentifier = Kumulos.getCurrentUserIdentifier(c);
 
         try {
-            httpClient = Kumulos.getHttpClient();
+            httpClient = Kumulos.getHttpClient(UrlBuilder.Service.PUSH);
         } catch (Kumulos.UninitializedException e) {
             Kumulos.log(TAG, e.getMessage());
             return null;
@@ -36,35 +42,81 @@ class InAppRequestService {
 
         String params = "";
         if (lastSyncTime != null){
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
-            sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-            params= "?after="+ sdf.format(lastSyncTime);
+            params= "?after="+ TimestampCodec.formatIso8601Utc(lastSyncTime);
         }
         String encodedIdentifier = Uri.encode(userIdentifier);
         String url = Kumulos.urlBuilder.urlForService(UrlBuilder.Service.PUSH, "/v1/users/"+encodedIdentifier+"/messages"+params);
 
-        final Request request = new Request.Builder()
+        Request.Builder requestBuilder = new Request.Builder()
                 .url(url)
                 .addHeader(Kumulos.KEY_AUTH_HEADER, Kumulos.authHeader)
                 .addHeader("Accept", "application/json")
-                .get()
-                .build();
+                .get();
+
+        SharedPreferences prefs = c.getSharedPreferences(SharedPrefs.PREFS_FILE, Context.MODE_PRIVATE);
+        if (url.equals(prefs.getString(SharedPrefs.IN_APP_SYNC_VALIDATOR_URL, null))) {
+            String etag = prefs.getString(SharedPrefs.IN_APP_SYNC_ETAG, null);
+            String lastModified = prefs.getString(SharedPrefs.IN_APP_SYNC_LAST_MODIFIED, null);
+
+            if (etag != null) {
+                requestBuilder.addHeader("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                requestBuilder.addHeader("If-Modified-Since", lastModified);
+            }
+        }
 
-        List<InAppMessage> messages = null;
+        InAppSyncResponse syncResponse = null;
 
-        try(Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
+        try(Response response = httpClient.newCall(requestBuilder.build()).execute()) {
+            if (response.code() == HTTP_NOT_MODIFIED) {
+                Kumulos.log(TAG, "In-app messages not modified since last sync");
+                syncResponse = new InAppSyncResponse(new ArrayList<>(), true, url, null, null);
+            }
+            else if (!response.isSuccessful()) {
                 logFailedResponse(response);
             }
             else{
-                messages = getMessages(response);
+                List<InAppMessage> messages = getMessages(response);
+                if (messages != null) {
+                    syncResponse = new InAppSyncResponse(messages, false, url, response.header("ETag"), response.header("Last-Modified"));
+                }
             }
         }
         catch(IOException e){
             e.printStackTrace();
         }
 
-        return messages;
+        return syncResponse;
+    }
+
+    /**
+     * Call once the response has been persisted, a validator stored earlier could cause a 304 for
+     * messages which never made it to the DB
+     */
+    static void storeSyncValidator(Context c, InAppSyncResponse response) {
+        SharedPreferences prefs = c.getSharedPreferences(SharedPrefs.PREFS_FILE, Context.MODE_PRIVATE);
+
+        if (response.getEtag() == null && response.getLastModified() == null) {
+            clearSyncValidator(c);
+            return;
+        }
+
+        prefs.edit()
+                .putString(SharedPrefs.IN_APP_SYNC_VALIDATOR_URL, response.getUrl())
+                .putString(SharedPrefs.IN_APP_SYNC_ETAG, response.getEtag())
+                .putString(SharedPrefs.IN_APP_SYNC_LAST_MODIFIED, response.getLastModified())
+                .apply();
+    }
+
+    static void clearSyncValidator(Context c) {
+        SharedPreferences prefs = c.getSharedPreferences(SharedPrefs.PREFS_FILE, Context.MODE_PRIVATE);
+
+        prefs.edit()
+                .remove(SharedPrefs.IN_APP_SYNC_VALIDATOR_URL)
+                .remove(SharedPrefs.IN_APP_SYNC_ETAG)
+                .remove(SharedPrefs.IN_APP_SYNC_LAST_MODIFIED)
+                .apply();
     }
 
     private static void logFailedResponse(Response response){
@@ -85,18 +137,10 @@ class InAppRequestService {
         }
     }
 
+    @Nullable
     private static List<InAppMessage> getMessages(Response response){
         try {
-            JSONArray result = new JSONArray(response.body().string());
-            List<InAppMessage> inAppMessages = new ArrayList<>();
-            int len = result.length();
-
-            for (int i = 0; i < len; i++) {
-                InAppMessage message = new InAppMessage(result.getJSONObject(i));
-                inAppMessages.add(message);
-            }
-
-            return inAppMessages;
+            return InAppMessageStreamParser.parse(response.body().charStream());
         }
         catch (NullPointerException| JSONException | ParseException | IOException e) {
             Kumulos.log(TAG, e.getMessage());
@@ -7,12 +7,16 @@ class InAppSaveResult {
     List<Integer> deliveredIds;
     List<Integer> deletedIds;
     boolean inboxUpdated;
+    int insertedCount;
+    int updatedCount;
 
-    InAppSaveResult(List<InAppMessage> itemsToPresent, List<Integer> deliveredIds, List<Integer> deletedIds, boolean inboxUpdated) {
+    InAppSaveResult(List<InAppMessage> itemsToPresent, List<Integer> deliveredIds, List<Integer> deletedIds, boolean inboxUpdated, int insertedCount, int updatedCount) {
         this.itemsToPresent = itemsToPresent;
         this.deliveredIds = deliveredIds;
         this.deletedIds = deletedIds;
         this.inboxUpdated = inboxUpdated;
+        this.insertedCount = insertedCount;
+        this.updatedCount = updatedCount;
     }
 
     List<InAppMessage> getItemsToPresent() {
@@ -30,4 +34,12 @@ class InAppSaveResult {
     boolean wasInboxUpdated() {
         return inboxUpdated;
     }
+
+    int getInsertedCount() {
+        return insertedCount;
+    }
+
+    int getUpdatedCount() {
+        return updatedCount;
+    }
 }
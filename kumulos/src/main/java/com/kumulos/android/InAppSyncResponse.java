@@ -0,0 +1,50 @@
+package com.kumulos.android;
+
+import java.util.List;
+
+import androidx.annotation.Nullable;
+
+class InAppSyncResponse {
+    private final List<InAppMessage> messages;
+    private final boolean notModified;
+    @Nullable
+    private final String url;
+    @Nullable
+    private final String etag;
+    @Nullable
+    private final String lastModified;
+
+    InAppSyncResponse(List<InAppMessage> messages, boolean notModified, @Nullable String url, @Nullable String etag, @Nullable String lastModified) {
+        this.messages = messages;
+        this.notModified = notModified;
+        this.url = url;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    List<InAppMessage> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return Whether the server answered 304, i.e. nothing changed since the last stored sync
+     */
+    boolean wasNotModified() {
+        return notModified;
+    }
+
+    @Nullable
+    String getUrl() {
+        return url;
+    }
+
+    @Nullable
+    String getEtag() {
+        return etag;
+    }
+
+    @Nullable
+    String getLastModified() {
+        return lastModified;
+    }
+}
@@ -17,6 +17,7 @@ import androidx.work.WorkerParameters;
 public class InAppSyncWorker extends Worker {
 
     private static final String TAG = InAppSyncWorker.class.getName();
+    private static final String TRACE_SECTION = "Kumulos worker: InAppSyncWorker";
 
     static void startPeriodicFetches(@NonNull final Context context) {
         Constraints taskConstraints = new Constraints.Builder()
@@ -30,7 +31,7 @@ public class InAppSyncWorker extends Worker {
                 .setInitialDelay(1, TimeUnit.HOURS)
                 .build();
 
-        Kumulos.executorService.submit(new Runnable() {
+        Kumulos.schedulingExecutor.submit(new Runnable() {
             @Override
             public void run() {
                 WorkManager.getInstance(context).enqueueUniquePeriodicWork(TAG, ExistingPeriodicWorkPolicy.REPLACE, workRequest);
@@ -39,7 +40,7 @@ public class InAppSyncWorker extends Worker {
     }
 
     static void cancelPeriodicFetches(Application application) {
-        Kumulos.executorService.submit(new Runnable() {
+        Kumulos.schedulingExecutor.submit(new Runnable() {
             @Override
             public void run() {
                 WorkManager.getInstance(application).cancelUniqueWork(TAG);
@@ -54,10 +55,17 @@ public class InAppSyncWorker extends Worker {
     @NonNull
     @Override
     public Result doWork() {
-        boolean success = InAppMessageService.fetch(getApplicationContext(), false);
+        long traceStartedAt = SdkTracing.begin(TRACE_SECTION);
+        try {
+            boolean success = InAppMessageService.fetch(getApplicationContext(), false);
 
-        if (!success) {
-            return Result.retry();
+            if (!success) {
+                return Result.retry();
+            }
+
+            InAppAssetCache.prefetch(getApplicationContext());
+        } finally {
+            SdkTracing.end(TRACE_SECTION, traceStartedAt);
         }
 
         return Result.success();
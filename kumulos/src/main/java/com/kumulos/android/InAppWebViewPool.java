@@ -0,0 +1,304 @@
+package com.kumulos.android;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.net.http.SslError;
+import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.webkit.JavascriptInterface;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.SslErrorHandler;
+import android.webkit.WebResourceError;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+/**
+ * Holds a single off-screen WebView with the in-app renderer already loaded, so presenting a
+ * message doesn't have to wait for a WebView to be created & the renderer to load.
+ *
+ * The WebView is created while the main thread is idle after an activity becomes available, and
+ * handed out at most once. Another is warmed on the next idle period. It's released on memory
+ * pressure.
+ */
+class InAppWebViewPool implements ComponentCallbacks2 {
+
+    private static final String TAG = InAppWebViewPool.class.getName();
+
+    private final Context context;
+
+    @Nullable
+    private WarmWebView warm;
+    private boolean warmUpScheduled = false;
+
+    /**
+     * A pre-warmed WebView, its JS bridge & how far the renderer got while off-screen
+     */
+    static class WarmWebView {
+        final WebView webView;
+        final Bridge bridge;
+        final MutableContextWrapper contextWrapper;
+        final long warmUpStartedAt;
+        boolean pageFinished = false;
+
+        WarmWebView(WebView webView, Bridge bridge, MutableContextWrapper contextWrapper, long warmUpStartedAt) {
+            this.webView = webView;
+            this.bridge = bridge;
+            this.contextWrapper = contextWrapper;
+            this.warmUpStartedAt = warmUpStartedAt;
+        }
+    }
+
+    /**
+     * JS interfaces only take effect on the next page load, so the renderer is bound to this
+     * bridge up front & messages are forwarded once a view has taken the WebView over
+     */
+    static class Bridge {
+        private final Object lock = new Object();
+        @Nullable
+        private InAppMessageView target;
+        private boolean rendererReady = false;
+
+        /**
+         * @return whether the renderer reported ready before the view was attached
+         */
+        boolean attach(@NonNull InAppMessageView view) {
+            synchronized (lock) {
+                target = view;
+                return rendererReady;
+            }
+        }
+
+        @JavascriptInterface
+        @AnyThread
+        public void postClientMessage(String msg) {
+            InAppMessageView view;
+            synchronized (lock) {
+                view = target;
+                if (view == null) {
+                    rendererReady |= isReadyMessage(msg);
+                    return;
+                }
+            }
+
+            view.postClientMessage(msg);
+        }
+
+        private static boolean isReadyMessage(String msg) {
+            try {
+                return "READY".equals(new JSONObject(msg).optString("type"));
+            } catch (JSONException e) {
+                return false;
+            }
+        }
+    }
+
+    InAppWebViewPool(Context context) {
+        this.context = context.getApplicationContext();
+        this.context.registerComponentCallbacks(this);
+    }
+
+    /**
+     * Warms a WebView next time the main thread is idle, unless one is already warm
+     */
+    @UiThread
+    void prewarm(@NonNull Activity activity) {
+        if (warm != null || warmUpScheduled) {
+            return;
+        }
+
+        warmUpScheduled = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                warmUpScheduled = false;
+                if (warm == null && !activity.isFinishing()) {
+                    warm = createWarmWebView(activity);
+                }
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Hands the warm WebView over to the given activity, if there is one
+     */
+    @UiThread
+    @Nullable
+    WarmWebView acquire(@NonNull Activity activity) {
+        WarmWebView acquired = warm;
+        warm = null;
+
+        if (acquired != null) {
+            acquired.contextWrapper.setBaseContext(activity);
+            Kumulos.log(TAG, "Using pre-warmed WebView, warmed " + (SystemClock.elapsedRealtime() - acquired.warmUpStartedAt) + "ms ago");
+        }
+
+        return acquired;
+    }
+
+    /**
+     * Stops the warm WebView referencing an activity which is going away
+     */
+    @UiThread
+    void activityUnavailable(@NonNull Activity activity) {
+        if (warm != null && warm.contextWrapper.getBaseContext() == activity) {
+            warm.contextWrapper.setBaseContext(context);
+        }
+    }
+
+    @UiThread
+    void release() {
+        if (warm == null) {
+            return;
+        }
+
+        Kumulos.log(TAG, "Releasing pre-warmed WebView");
+        warm.webView.destroy();
+        warm = null;
+    }
+
+    @SuppressLint({"SetJavaScriptEnabled", "AddJavascriptInterface"})
+    @UiThread
+    @Nullable
+    private WarmWebView createWarmWebView(@NonNull Activity activity) {
+        try {
+            long startedAt = SystemClock.elapsedRealtime();
+            MutableContextWrapper contextWrapper = new MutableContextWrapper(activity);
+            WebView webView = new WebView(contextWrapper);
+            Bridge bridge = new Bridge();
+
+            InAppMessageView.configureWebView(webView);
+            webView.addJavascriptInterface(bridge, InAppMessageView.JS_NAME);
+
+            WarmWebView created = new WarmWebView(webView, bridge, contextWrapper, startedAt);
+            webView.setWebViewClient(new WarmUpClient(created));
+            webView.loadUrl(Kumulos.urlBuilder.urlForService(UrlBuilder.Service.IAR, ""));
+
+            return created;
+        } catch (Exception e) {
+            Kumulos.log(TAG, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Handles page events until a view takes the WebView over, discarding it on failure
+     */
+    private class WarmUpClient extends WebViewClient {
+        private final WarmWebView target;
+
+        WarmUpClient(WarmWebView target) {
+            this.target = target;
+        }
+
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            target.pageFinished = true;
+            Kumulos.log(TAG, "Pre-warmed WebView loaded in " + (SystemClock.elapsedRealtime() - target.warmUpStartedAt) + "ms");
+        }
+
+        @Override
+        @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+        public void onReceivedHttpError(WebView view, WebResourceRequest request, WebResourceResponse errorResponse) {
+            String iarBaseUrl = Kumulos.urlBuilder.urlForService(UrlBuilder.Service.IAR, "");
+            if (!request.getUrl().toString().startsWith(iarBaseUrl)) {
+                return;
+            }
+
+            if (404 == errorResponse.getStatusCode()) {
+                view.clearCache(true);
+                InAppAssetCache.clearInBackground(context);
+            }
+
+            discard();
+        }
+
+        @Override
+        @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+        public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+            if (!"GET".equalsIgnoreCase(request.getMethod())) {
+                return null;
+            }
+
+            return InAppAssetCache.read(context, request.getUrl().toString());
+        }
+
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+            return InAppAssetCache.read(context, url);
+        }
+
+        @Override
+        public void onReceivedSslError(WebView view, SslErrorHandler handler, SslError error) {
+            handler.cancel();
+            discard();
+        }
+
+        @Override
+        public void onReceivedError(WebView view, int errorCode, String description, String failingUrl) {
+            Kumulos.log(TAG, "Error code: " + errorCode + ". " + description + " " + failingUrl);
+            discard();
+        }
+
+        @Override
+        @TargetApi(Build.VERSION_CODES.M)
+        public void onReceivedError(WebView view, WebResourceRequest req, WebResourceError rerr) {
+            if (!req.isForMainFrame()) {
+                return;
+            }
+
+            onReceivedError(view, rerr.getErrorCode(), rerr.getDescription().toString(), req.getUrl().toString());
+        }
+
+        @Override
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            discard();
+
+            // Allow app to keep running, don't terminate
+            return true;
+        }
+
+        private void discard() {
+            if (warm == target) {
+                release();
+            }
+        }
+    }
+
+    //==============================================================================================
+    //-- ComponentCallbacks2
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            release();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        release();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        // noop
+    }
+}
@@ -1,6 +1,7 @@
 package com.kumulos.android;
 
 import android.content.Context;
+import android.os.Process;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -12,44 +13,96 @@ import java.util.UUID;
  * Represents the unique installation ID assigned the first time the Kumulos SDK is initialized
  */
 public class Installation {
-    private static String sID = null;
+    private static final String TAG = Installation.class.getName();
+
+    private static volatile String sID = null;
     private static final String INSTALLATION = "K_UDID";
+    private static final Object loadLock = new Object();
 
     /**
      * Returns the unique Kumulos installation ID, creating it if it doesn't exist
      *
+     * Only the first call reads from disk, later calls return the cached ID without locking.
+     *
      * @param context
      * @return
      */
-    public synchronized static String id(Context context) {
-        if (sID != null) {
+    public static String id(Context context) {
+        String id = sID;
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (loadLock) {
+            if (sID == null) {
+                sID = loadOrCreate(context);
+            }
+
             return sID;
         }
+    }
 
+    /**
+     * Loads the ID on a background thread, so the first call to id() doesn't have to wait on disk
+     */
+    static void preload(Context context) {
+        if (sID != null) {
+            return;
+        }
+
+        Context appContext = context.getApplicationContext();
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            id(appContext);
+        }, "kumulos-installation").start();
+    }
+
+    private static String loadOrCreate(Context context) {
         File installation = new File(context.getFilesDir(), INSTALLATION);
         try {
-            if (!installation.exists())
-                writeInstallationFile(installation);
-            sID = readInstallationFile(installation);
+            if (installation.exists()) {
+                String id = readInstallationFile(installation);
+                if (!id.trim().isEmpty()) {
+                    return id;
+                }
+
+                // Left by an interrupted write before writes were atomic
+                Kumulos.log(TAG, "Installation ID file is empty, replacing it");
+            }
+
+            return writeInstallationFile(installation);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-
-        return sID;
     }
 
     private static String readInstallationFile(File installation) throws IOException {
-        RandomAccessFile f = new RandomAccessFile(installation, "r");
-        byte[] bytes = new byte[(int) f.length()];
-        f.readFully(bytes);
-        f.close();
-        return new String(bytes);
+        try (RandomAccessFile f = new RandomAccessFile(installation, "r")) {
+            byte[] bytes = new byte[(int) f.length()];
+            f.readFully(bytes);
+            return new String(bytes);
+        }
     }
 
-    private static void writeInstallationFile(File installation) throws IOException {
-        FileOutputStream out = new FileOutputStream(installation);
+    /**
+     * Writes a new ID to a temporary file & renames it into place, so a crash can't leave a
+     * partially written ID behind
+     */
+    private static String writeInstallationFile(File installation) throws IOException {
         String id = UUID.randomUUID().toString();
-        out.write(id.getBytes());
-        out.close();
+        File tmp = new File(installation.getPath() + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(id.getBytes());
+            out.getFD().sync();
+        }
+
+        if (!tmp.renameTo(installation)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw new IOException("Failed to move installation ID file into place");
+        }
+
+        return id;
     }
 }
@@ -28,20 +28,26 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationManagerCompat;
 
 import okhttp3.Call;
+import okhttp3.ConnectionPool;
 import okhttp3.ConnectionSpec;
 import okhttp3.FormBody;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -66,11 +72,30 @@ public final class Kumulos {
 
     private static transient String sessionToken;
 
+    private static final int HTTP_MAX_IDLE_CONNECTIONS = 5;
+    private static final long HTTP_KEEP_ALIVE_MINUTES = 5;
+
     private static OkHttpClient httpClient;
+    private static Map<UrlBuilder.Service, OkHttpClient> serviceHttpClients;
+    /** package */ static final ConnectionReuseTracker connectionReuseTracker = new ConnectionReuseTracker();
     /** package */ static String authHeader;
-    /** package */ static ExecutorService executorService;
+    private static final int NETWORK_LANE_THREADS = 3;
+    private static final int NETWORK_LANE_QUEUE_CAPACITY = 64;
+    private static final int DB_READ_LANE_THREADS = 2;
+    private static final int DB_READ_LANE_QUEUE_CAPACITY = 64;
+
+    /** package */ static LaneExecutor executorService;
+    /** package */ static LaneExecutor dbReadExecutor;
+    /** package */ static LaneExecutor networkExecutor;
+    /** package */ static LaneExecutor schedulingExecutor;
+    /** package */ static LaneExecutor inAppSyncExecutor;
+    /** package */ static AnalyticsEventWriter eventWriter;
     /** package */ static final Handler handler = new Handler(Looper.getMainLooper());
-    private static final Object userIdLocker = new Object();
+    private static final String TRACE_SECTION_INITIALIZE = "Kumulos initialize";
+    private static final String TRACE_SECTION_DEFERRED_INITIALIZATION = "Kumulos deferred initialization";
+    private static volatile CountDownLatch deferredInitialization;
+    private static final Object deferredCallsLock = new Object();
+    private static volatile List<Runnable> callsAwaitingInitialization;
 
     static PushActionHandlerInterface pushActionHandler = null;
 
@@ -104,6 +129,10 @@ public final class Kumulos {
 
     /**
      * Used to configure the Kumulos class. Only needs to be called once per process
+     *
+     * With KumulosConfig.Builder.enableDeferredInitialization(), only what's needed to accept API
+     * calls is done here & the rest finishes on a background thread.
+     *
      * @param application
      * @param config
      */
@@ -114,16 +143,58 @@ public final class Kumulos {
         }
 
         currentConfig = config;
+        SdkMetrics.setListener(config.getMetricsListener());
+        SdkTracing.setRecording(config.traceRecordingEnabled());
+
+        long initStartedAt = SdkTracing.begin(TRACE_SECTION_INITIALIZE);
 
-        installId = Installation.id(application);
         sessionToken = UUID.randomUUID().toString();
 
         authHeader = buildBasicAuthHeader(config.getApiKey(), config.getSecretKey());
 
         urlBuilder  = new UrlBuilder(config.getBaseUrlMap());
-        httpClient = buildOkHttpClient();
 
-        executorService = Executors.newSingleThreadExecutor();
+        // DB work stays serial to preserve write ordering, network & WorkManager scheduling run in their own lanes
+        executorService = LaneExecutor.serial("db");
+        dbReadExecutor = LaneExecutor.bounded("db-read", DB_READ_LANE_THREADS, DB_READ_LANE_QUEUE_CAPACITY);
+        networkExecutor = LaneExecutor.bounded("net", NETWORK_LANE_THREADS, NETWORK_LANE_QUEUE_CAPACITY);
+        schedulingExecutor = LaneExecutor.serial("sched");
+        // In-app fetches share sync state (last sync time, validators, pending tickles) so run one at a time
+        inAppSyncExecutor = LaneExecutor.serial("in-app-sync");
+
+        // Analytics DB connection is opened lazily on first use and held for the process lifetime
+        AnalyticsDbHelper.getInstance(application);
+        eventWriter = new AnalyticsEventWriter(application);
+
+        if (config.deferredInitializationEnabled()) {
+            synchronized (deferredCallsLock) {
+                callsAwaitingInitialization = new ArrayList<>();
+            }
+            deferredInitialization = new CountDownLatch(1);
+
+            // In-app APIs & SDK components read the application before the in-app setup has run
+            KumulosInApp.application = application;
+
+            initialized = true;
+
+            if (currentConfig.getDeferredDeepLinkHandler() != null){
+                deepLinkHelper = new DeferredDeepLinkHelper();
+            }
+
+            // Registers for app state on the main thread, so the first activity isn't missed
+            sessionHelper = new SessionHelper(application);
+
+            // Not submit(), a failure must crash as it would have done on the main thread
+            schedulingExecutor.execute(() -> completeDeferredInitialization(application));
+
+            SdkTracing.end(TRACE_SECTION_INITIALIZE, initStartedAt);
+            log(TAG, "Initialized in deferred mode, main thread work took " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - initStartedAt) + "ms");
+            return;
+        }
+
+        installId = Installation.id(application);
+        httpClient = buildOkHttpClient();
+        serviceHttpClients = buildServiceHttpClients(httpClient);
 
         initialized = true;
 
@@ -135,9 +206,57 @@ public final class Kumulos {
 
         sessionHelper = new SessionHelper(application);
 
+        startBackgroundServices(application, config);
+
+        SdkTracing.end(TRACE_SECTION_INITIALIZE, initStartedAt);
+    }
+
+    /**
+     * Finishes initialization off the main thread, then replays API calls made in the meantime
+     */
+    private static void completeDeferredInitialization(Application application) {
+        long startedAt = SdkTracing.begin(TRACE_SECTION_DEFERRED_INITIALIZATION);
+
+        installId = Installation.id(application);
+        httpClient = buildOkHttpClient();
+        serviceHttpClients = buildServiceHttpClients(httpClient);
+
+        // Background callers can read the clients from here on
+        deferredInitialization.countDown();
+
+        // Queued calls replay on the main thread, where most were made, so they run in order with
+        // calls made after them, and a main thread stuck waiting on the latch can't hold them up
+        handler.post(Kumulos::replayCallsAwaitingInitialization);
+
+        // Loads the prefs from disk here rather than when the in-app setup reads them
+        application.getSharedPreferences(SharedPrefs.PREFS_FILE, Context.MODE_PRIVATE);
+
+        // Registers for app state, which must happen on the main thread
+        handler.post(() -> KumulosInApp.initialize(application, currentConfig));
+
+        startBackgroundServices(application, currentConfig);
+
+        SdkTracing.end(TRACE_SECTION_DEFERRED_INITIALIZATION, startedAt);
+        log(TAG, "Deferred initialization completed in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + "ms");
+    }
+
+    private static void replayCallsAwaitingInitialization() {
+        // Other threads wait on the lock whilst queued calls are replayed, so calls stay in order.
+        // The queue is closed first so replayed calls don't queue themselves again.
+        synchronized (deferredCallsLock) {
+            List<Runnable> pending = callsAwaitingInitialization;
+            callsAwaitingInitialization = null;
+
+            for (Runnable apiCall : pending) {
+                apiCall.run();
+            }
+        }
+    }
+
+    private static void startBackgroundServices(Application application, KumulosConfig config) {
         // Stats ping
         AnalyticsContract.StatsCallHomeRunnable statsTask = new AnalyticsContract.StatsCallHomeRunnable(application);
-        executorService.submit(statsTask);
+        schedulingExecutor.submit(statsTask);
 
         if (config.crashReportingEnabled()) {
             // Crash reporting
@@ -163,9 +282,60 @@ public final class Kumulos {
         }
     }
 
+    /**
+     * Queues the API call if deferred initialization hasn't completed yet
+     *
+     * @return whether the call was queued, otherwise the caller should make it now
+     */
+    /** package */ static boolean deferUntilInitialized(Runnable apiCall) {
+        if (null == callsAwaitingInitialization) {
+            return false;
+        }
+
+        synchronized (deferredCallsLock) {
+            List<Runnable> pending = callsAwaitingInitialization;
+            if (null == pending) {
+                return false;
+            }
+
+            pending.add(apiCall);
+            return true;
+        }
+    }
+
+    /**
+     * Blocks until deferred initialization has completed, returns immediately otherwise
+     */
+    private static void awaitInitialization() {
+        CountDownLatch latch = deferredInitialization;
+        if (null == latch || latch.getCount() == 0) {
+            return;
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static OkHttpClient buildOkHttpClient(){
+        // All SDK traffic shares one connection pool & dispatcher, HTTP/2 is negotiated where available
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(HTTP_MAX_IDLE_CONNECTIONS, HTTP_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .eventListenerFactory(HttpCallMetrics.FACTORY);
+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M){
-            return new OkHttpClient();
+            return builder.build();
         }
 
         //ciphers available on Android 4.4 have intersections with the approved ones in MODERN_TLS, but the intersections are on bad cipher list, so,
@@ -174,11 +344,36 @@ public final class Kumulos {
             .allEnabledCipherSuites()
             .build();
 
-        return new OkHttpClient.Builder()
+        return builder
             .connectionSpecs(Collections.singletonList(spec))
             .build();
     }
 
+    /**
+     * Derives per-service clients from the shared client. Derived clients share its connection
+     * pool, dispatcher & TLS config, only the timeouts differ.
+     */
+    private static Map<UrlBuilder.Service, OkHttpClient> buildServiceHttpClients(OkHttpClient baseClient) {
+        Map<UrlBuilder.Service, OkHttpClient> clients = new EnumMap<>(UrlBuilder.Service.class);
+
+        for (UrlBuilder.Service service : UrlBuilder.Service.values()) {
+            clients.put(service, baseClient);
+        }
+
+        // Event batches can be large when draining an offline backlog
+        clients.put(UrlBuilder.Service.EVENTS, baseClient.newBuilder()
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build());
+
+        // In-app sync responses may carry many messages with rich content
+        clients.put(UrlBuilder.Service.PUSH, baseClient.newBuilder()
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build());
+
+        return clients;
+    }
+
     //==============================================================================================
     //-- Getters/setters
 
@@ -229,6 +424,14 @@ public final class Kumulos {
             return;
         }
 
+        if (deferUntilInitialized(() -> enqueueCall(methodAlias, params, handler, tag))) {
+            return;
+        }
+
+        enqueueCall(methodAlias, params, handler, tag);
+    }
+
+    private static void enqueueCall(String methodAlias, @Nullable Map<String, String> params, ResponseHandler handler, int tag) {
         String url = getMethodUrl(methodAlias);
         handler.params = params;
         handler.url = url;
@@ -273,6 +476,8 @@ public final class Kumulos {
      * @param tag
      */
     public static void callSync(String methodAlias, @Nullable Map<String, String> params, ResponseHandler handler, int tag) {
+        awaitInitialization();
+
         String url = getMethodUrl(methodAlias);
         handler.params = params;
         handler.url = url;
@@ -393,8 +598,15 @@ public final class Kumulos {
             throw new IllegalArgumentException("Kumulos.trackEvent expects a non-empty event type");
         }
 
-        Runnable trackingTask = new AnalyticsContract.TrackEventRunnable(context, eventType, timestamp, properties, immediateFlush);
-        executorService.submit(trackingTask);
+        eventWriter.write(eventType, timestamp, properties, immediateFlush);
+    }
+
+    /** package */ static void trackEvents(@NonNull final Context context, @NonNull final String eventType, @NonNull final List<JSONObject> propertiesList) {
+        if (TextUtils.isEmpty(eventType)) {
+            throw new IllegalArgumentException("Kumulos.trackEvents expects a non-empty event type");
+        }
+
+        eventWriter.writeAll(eventType, System.currentTimeMillis(), propertiesList);
     }
 
     /**
@@ -449,12 +661,8 @@ public final class Kumulos {
      * @param context
      */
     public static void clearUserAssociation(@NonNull Context context) {
-        String currentUserId = null;
         SharedPreferences prefs = context.getSharedPreferences(SharedPrefs.PREFS_FILE, Context.MODE_PRIVATE);
-
-        synchronized (userIdLocker) {
-            currentUserId = prefs.getString(SharedPrefs.KEY_USER_IDENTIFIER, null);
-        }
+        String currentUserId = prefs.getString(SharedPrefs.KEY_USER_IDENTIFIER, null);
 
         JSONObject props = new JSONObject();
         try {
@@ -466,11 +674,9 @@ public final class Kumulos {
 
         trackEvent(context, AnalyticsContract.EVENT_TYPE_CLEAR_USER_ASSOCIATION, props);
 
-        synchronized (userIdLocker) {
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.remove(SharedPrefs.KEY_USER_IDENTIFIER);
-            editor.apply();
-        }
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.remove(SharedPrefs.KEY_USER_IDENTIFIER);
+        editor.apply();
 
         KumulosInApp.handleInAppUserChange(context, currentConfig);
     }
@@ -485,10 +691,20 @@ public final class Kumulos {
      * @return The current user identifier (if available), otherwise the Kumulos installation ID
      */
     public static String getCurrentUserIdentifier(@NonNull Context context) {
-        synchronized (userIdLocker) {
-            SharedPreferences preferences = context.getSharedPreferences(SharedPrefs.PREFS_FILE, Context.MODE_PRIVATE);
-            return preferences.getString(SharedPrefs.KEY_USER_IDENTIFIER, Installation.id(context));
-        }
+        String userIdentifier = getAssociatedUserIdentifier(context);
+
+        return null != userIdentifier ? userIdentifier : Installation.id(context);
+    }
+
+    /**
+     * @return The identifier of the associated user, or null when none is associated
+     */
+    @Nullable
+    static String getAssociatedUserIdentifier(@NonNull Context context) {
+        // Single prefs reads & writes are atomic, so no lock is needed
+        SharedPreferences preferences = context.getSharedPreferences(SharedPrefs.PREFS_FILE, Context.MODE_PRIVATE);
+
+        return preferences.getString(SharedPrefs.KEY_USER_IDENTIFIER, null);
     }
 
     private static void associateUserWithInstallImpl(Context context, @NonNull final String userIdentifier, @Nullable final JSONObject attributes) {
@@ -512,11 +728,9 @@ public final class Kumulos {
         if (isNewUserIdentifier){
             SharedPreferences prefs = context.getSharedPreferences(SharedPrefs.PREFS_FILE, Context.MODE_PRIVATE);
 
-            synchronized (userIdLocker) {
-                SharedPreferences.Editor editor = prefs.edit();
-                editor.putString(SharedPrefs.KEY_USER_IDENTIFIER, userIdentifier);
-                editor.apply();
-            }
+            SharedPreferences.Editor editor = prefs.edit();
+            editor.putString(SharedPrefs.KEY_USER_IDENTIFIER, userIdentifier);
+            editor.apply();
         }
 
         trackEventImmediately(context, AnalyticsContract.EVENT_TYPE_ASSOCIATE_USER, props);
@@ -537,7 +751,7 @@ public final class Kumulos {
      */
     public static void pushRequestDeviceToken(Context context) {
         PushRegistration.RegisterTask task = new PushRegistration.RegisterTask(context);
-        executorService.submit(task);
+        networkExecutor.submit(task);
     }
 
     /**
@@ -547,7 +761,7 @@ public final class Kumulos {
      */
     public static void pushUnregister(Context context) {
         PushRegistration.UnregisterTask task = new PushRegistration.UnregisterTask(context);
-        executorService.submit(task);
+        networkExecutor.submit(task);
     }
 
     /**
@@ -661,6 +875,10 @@ public final class Kumulos {
             return;
         }
 
+        if (deferUntilInitialized(() -> deepLinkHelper.maybeProcessUrl(context, uri.toString(), false))) {
+            return;
+        }
+
         deepLinkHelper.maybeProcessUrl(context, uri.toString(), false);
     }
 
@@ -677,9 +895,34 @@ public final class Kumulos {
             return;
         }
 
+        if (deferUntilInitialized(() -> deepLinkHelper.checkForNonContinuationLinkMatch(context))) {
+            return;
+        }
+
         deepLinkHelper.checkForNonContinuationLinkMatch(context);
     }
 
+    //==============================================================================================
+    //-- Tracing APIs
+
+    /**
+     * Exports the SDK's background work recorded over the given period as JSON in the Chrome
+     * trace event format, which can be opened in Perfetto or chrome://tracing.
+     *
+     * Timestamps use the same monotonic clock as system traces. Requires trace recording to be
+     * enabled with KumulosConfig.Builder.enableTraceRecording().
+     *
+     * @param lastSeconds
+     * @return trace JSON, or null if trace recording isn't enabled
+     */
+    public static @Nullable String exportTrace(int lastSeconds) {
+        if (!SdkTracing.isRecording()) {
+            return null;
+        }
+
+        return SdkTracing.exportChromeTrace(TimeUnit.SECONDS.toMillis(Math.abs(lastSeconds)));
+    }
+
     //==============================================================================================
     //-- OTHER
 
@@ -772,13 +1015,28 @@ public final class Kumulos {
             throw new UninitializedException();
         }
 
+        awaitInitialization();
+
         return httpClient;
     }
 
+    /** package */ static OkHttpClient getHttpClient(UrlBuilder.Service service) throws UninitializedException {
+        if (!initialized) {
+            throw new UninitializedException();
+        }
+
+        awaitInitialization();
+
+        return serviceHttpClients.get(service);
+    }
+
     /** package */ static String getInstallId() throws UninitializedException {
         if (!initialized) {
             throw new UninitializedException();
         }
+
+        awaitInitialization();
+
         return installId;
     }
 
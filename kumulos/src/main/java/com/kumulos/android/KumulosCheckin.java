@@ -1,6 +1,5 @@
 package com.kumulos.android;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.text.TextUtils;
 import android.util.Patterns;
@@ -10,13 +9,11 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 import androidx.annotation.NonNull;
@@ -26,8 +23,6 @@ import androidx.annotation.Nullable;
  * Represents a checkin for a group of people at a location
  */
 public final class KumulosCheckin {
-    @SuppressLint("ConstantLocale")
-    private static final SimpleDateFormat ISO8601_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
 
     private static final String FIELD_ID = "id";
     private static final String FIELD_LOCATION = "location";
@@ -180,7 +175,7 @@ public final class KumulosCheckin {
 
         if (props.has(FIELD_CHECKED_IN_AT) && !props.isNull(FIELD_CHECKED_IN_AT)) {
             try {
-                checkin.checkedInAt = ISO8601_FORMAT.parse(props.getString(FIELD_CHECKED_IN_AT));
+                checkin.checkedInAt = TimestampCodec.parseIso8601(props.getString(FIELD_CHECKED_IN_AT));
             } catch (ParseException e) {
                 e.printStackTrace();
             }
@@ -188,7 +183,7 @@ public final class KumulosCheckin {
 
         if (props.has(FIELD_CHECKED_OUT_AT) && !props.isNull(FIELD_CHECKED_OUT_AT)) {
             try {
-                checkin.checkedOutAt = ISO8601_FORMAT.parse(props.getString(FIELD_CHECKED_OUT_AT));
+                checkin.checkedOutAt = TimestampCodec.parseIso8601(props.getString(FIELD_CHECKED_OUT_AT));
             } catch (ParseException e) {
                 e.printStackTrace();
             }
@@ -414,7 +409,7 @@ public final class KumulosCheckin {
 
             if (json.has(FIELD_CHECKED_OUT_AT) && !json.isNull(FIELD_CHECKED_OUT_AT)) {
                 try {
-                    contact.checkedOutAt = ISO8601_FORMAT.parse(json.getString(FIELD_CHECKED_OUT_AT));
+                    contact.checkedOutAt = TimestampCodec.parseIso8601(json.getString(FIELD_CHECKED_OUT_AT));
                 } catch (ParseException e) {
                     e.printStackTrace();
                 }
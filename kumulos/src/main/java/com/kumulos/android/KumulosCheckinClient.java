@@ -46,6 +46,14 @@ public class KumulosCheckinClient {
             throw new KumulosCheckin.ValidationException("Must have at least one contact record added prior to check in");
         }
 
+        if (Kumulos.deferUntilInitialized(() -> sendCheckIn(context, checkin, resultCallback))) {
+            return;
+        }
+
+        sendCheckIn(context, checkin, resultCallback);
+    }
+
+    private static void sendCheckIn(Context context, KumulosCheckin checkin, Kumulos.ResultCallback<KumulosCheckin> resultCallback) {
         JSONObject params;
         try {
             params = checkin.toJSONObject();
@@ -97,6 +105,10 @@ public class KumulosCheckinClient {
      * @param resultCallback
      */
     public static void getOpenCheckins(Context context, Kumulos.ResultCallback<List<KumulosCheckin>> resultCallback) {
+        if (Kumulos.deferUntilInitialized(() -> getOpenCheckins(context, resultCallback))) {
+            return;
+        }
+
         String openCheckinsUrl = getUserCheckinsUrlBuilder(context, "open-checkins").toString();
         String url = getDeviceKeyedUrl(context, openCheckinsUrl);
 
@@ -159,6 +171,10 @@ public class KumulosCheckinClient {
     }
 
     private static void checkOut(@NonNull Context context, @Nullable KumulosCheckin checkin, @Nullable KumulosCheckin.Contact contact, @NonNull Kumulos.ResultCallback<KumulosCheckin> callback) {
+        if (Kumulos.deferUntilInitialized(() -> checkOut(context, checkin, contact, callback))) {
+            return;
+        }
+
         StringBuilder urlBuilder = getUserCheckinsUrlBuilder(context, "checkins");
 
         if (null != checkin) {
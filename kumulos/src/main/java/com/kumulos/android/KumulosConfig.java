@@ -22,14 +22,22 @@ public final class KumulosConfig {
     @DrawableRes
     static final int DEFAULT_NOTIFICATION_ICON_ID = R.drawable.kumulos_ic_stat_notifications;
     static final int DEFAULT_SESSION_IDLE_TIMEOUT_SECONDS = 23;
+    static final int DEFAULT_MAX_STORED_EVENTS = 10000;
+    static final long DEFAULT_MAX_STORED_EVENT_BYTES = 5 * 1024 * 1024;
 
     private String apiKey;
     private String secretKey;
     @DrawableRes
     private int notificationSmallIconId;
     private boolean crashReportingEnabled;
+    private boolean eventUploadCompressionEnabled;
+    private boolean inAppWebViewPrewarmingEnabled;
+    private boolean traceRecordingEnabled;
+    private boolean deferredInitializationEnabled;
     private InAppConsentStrategy inAppConsentStrategy;
     private int sessionIdleTimeoutSeconds;
+    private int maxStoredEvents;
+    private long maxStoredEventBytes;
 
     private JSONObject runtimeInfo;
     private JSONObject sdkInfo;
@@ -39,6 +47,7 @@ public final class KumulosConfig {
 
     private URL deepLinkCname;
     private DeferredDeepLinkHandlerInterface deferredDeepLinkHandler;
+    private MetricsListenerInterface metricsListener;
 
     public enum InAppConsentStrategy{
         AUTO_ENROLL,
@@ -64,10 +73,31 @@ public final class KumulosConfig {
         this.crashReportingEnabled = enabled;
     }
 
+    private void setEventUploadCompressionEnabled(boolean enabled) {
+        this.eventUploadCompressionEnabled = enabled;
+    }
+
+    private void setInAppWebViewPrewarmingEnabled(boolean enabled) {
+        this.inAppWebViewPrewarmingEnabled = enabled;
+    }
+
+    private void setTraceRecordingEnabled(boolean enabled) {
+        this.traceRecordingEnabled = enabled;
+    }
+
+    private void setDeferredInitializationEnabled(boolean enabled) {
+        this.deferredInitializationEnabled = enabled;
+    }
+
     private void setSessionIdleTimeoutSeconds(int timeoutSeconds) {
         this.sessionIdleTimeoutSeconds = timeoutSeconds;
     }
 
+    private void setEventStoreLimits(int maxEvents, long maxBytes) {
+        this.maxStoredEvents = maxEvents;
+        this.maxStoredEventBytes = maxBytes;
+    }
+
     private void setRuntimeInfo(JSONObject info) {
         this.runtimeInfo = info;
     }
@@ -91,6 +121,10 @@ public final class KumulosConfig {
         this.deferredDeepLinkHandler = deferredHandler;
     }
 
+    private void setMetricsListener(@Nullable MetricsListenerInterface metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
     public String getApiKey() {
         return apiKey;
     }
@@ -107,10 +141,34 @@ public final class KumulosConfig {
         return crashReportingEnabled;
     }
 
+    public boolean eventUploadCompressionEnabled() {
+        return eventUploadCompressionEnabled;
+    }
+
+    public boolean inAppWebViewPrewarmingEnabled() {
+        return inAppWebViewPrewarmingEnabled;
+    }
+
+    public boolean traceRecordingEnabled() {
+        return traceRecordingEnabled;
+    }
+
+    public boolean deferredInitializationEnabled() {
+        return deferredInitializationEnabled;
+    }
+
     public int getSessionIdleTimeoutSeconds() {
         return sessionIdleTimeoutSeconds;
     }
 
+    public int getMaxStoredEvents() {
+        return maxStoredEvents;
+    }
+
+    public long getMaxStoredEventBytes() {
+        return maxStoredEventBytes;
+    }
+
     JSONObject getRuntimeInfo() {
         return this.runtimeInfo;
     }
@@ -143,6 +201,10 @@ public final class KumulosConfig {
         return this.deferredDeepLinkHandler;
     }
 
+    public @Nullable MetricsListenerInterface getMetricsListener() {
+        return this.metricsListener;
+    }
+
     /**
      * Config builder for the Kumulos client
      */
@@ -153,8 +215,14 @@ public final class KumulosConfig {
         @DrawableRes
         private int notificationSmallIconDrawableId = KumulosConfig.DEFAULT_NOTIFICATION_ICON_ID;
         private boolean enableCrashReporting = false;
+        private boolean enableEventUploadCompression = false;
+        private boolean enableInAppWebViewPrewarming = false;
+        private boolean enableTraceRecording = false;
+        private boolean enableDeferredInitialization = false;
         private InAppConsentStrategy consentStrategy = null;
         private int sessionIdleTimeoutSeconds = KumulosConfig.DEFAULT_SESSION_IDLE_TIMEOUT_SECONDS;
+        private int maxStoredEvents = KumulosConfig.DEFAULT_MAX_STORED_EVENTS;
+        private long maxStoredEventBytes = KumulosConfig.DEFAULT_MAX_STORED_EVENT_BYTES;
 
         private JSONObject runtimeInfo;
         private JSONObject sdkInfo;
@@ -162,6 +230,7 @@ public final class KumulosConfig {
 
         private @Nullable URL deepLinkCname;
         private DeferredDeepLinkHandlerInterface deferredDeepLinkHandler;
+        private @Nullable MetricsListenerInterface metricsListener;
 
         public Builder(@NonNull String apiKey, @NonNull String secretKey) {
             this.apiKey = apiKey;
@@ -186,11 +255,68 @@ public final class KumulosConfig {
             return this;
         }
 
+        /**
+         * Gzip-compresses analytics event uploads, reducing bytes sent over the network.
+         *
+         * If the events service rejects compressed bodies, uploads fall back to being sent
+         * uncompressed for the rest of the process lifetime.
+         *
+         * @return
+         */
+        public Builder enableEventUploadCompression() {
+            this.enableEventUploadCompression = true;
+            return this;
+        }
+
         public Builder enableInAppMessaging(InAppConsentStrategy strategy) {
             this.consentStrategy = strategy;
             return this;
         }
 
+        /**
+         * Loads the in-app message renderer into an off-screen WebView while the app is idle, so
+         * the next in-app message can be shown without waiting for the renderer to load.
+         *
+         * The pre-warmed WebView is released when the system reports memory pressure. Has no
+         * effect unless in-app messaging is enabled.
+         *
+         * @return
+         */
+        public Builder enableInAppWebViewPrewarming() {
+            this.enableInAppWebViewPrewarming = true;
+            return this;
+        }
+
+        /**
+         * Records the SDK's recent background work in memory, so it can be exported with
+         * Kumulos.exportTrace() to correlate with the app's own traces.
+         *
+         * SDK work is always marked as trace sections for system traces; this only adds the
+         * in-process recorder.
+         *
+         * @return
+         */
+        public Builder enableTraceRecording() {
+            this.enableTraceRecording = true;
+            return this;
+        }
+
+        /**
+         * Keeps Kumulos.initialize() to the minimum needed to accept API calls, finishing the rest
+         * (installation ID, HTTP client, in-app messaging & crash reporting setup) on a background
+         * thread to shorten app cold start.
+         *
+         * Kumulos.call() invocations made in the meantime are queued & replayed in order, and
+         * tracked events are buffered as usual. Crashes before the background work completes
+         * are not reported.
+         *
+         * @return
+         */
+        public Builder enableDeferredInitialization() {
+            this.enableDeferredInitialization = true;
+            return this;
+        }
+
         public Builder enableDeepLinking(@NonNull String cname, DeferredDeepLinkHandlerInterface handler) {
             this.deferredDeepLinkHandler = handler;
             try{
@@ -228,6 +354,42 @@ public final class KumulosConfig {
             return this;
         }
 
+        /**
+         * Limits how many analytics events are kept on the device whilst waiting to be uploaded,
+         * e.g. when the device is offline for a long time.
+         *
+         * When either limit is exceeded, events are evicted lowest value first: custom events and
+         * location/beacon updates go before SDK events, and installation & user association
+         * events are evicted last. Within each priority the oldest events are evicted first.
+         *
+         * This defaults to KumulosConfig.DEFAULT_MAX_STORED_EVENTS events and
+         * KumulosConfig.DEFAULT_MAX_STORED_EVENT_BYTES bytes if unspecified.
+         *
+         * @param maxEvents
+         * @param maxBytes
+         * @return
+         */
+        public Builder setEventStoreLimits(int maxEvents, long maxBytes) {
+            this.maxStoredEvents = Math.abs(maxEvents);
+            this.maxStoredEventBytes = Math.abs(maxBytes);
+            return this;
+        }
+
+        /**
+         * Receives measurements of the SDK's own work: background lane queueing, local database
+         * operations, HTTP calls, event uploads and notification display latency.
+         *
+         * Callbacks run synchronously on SDK threads and must return quickly. No measurements are
+         * taken if unspecified.
+         *
+         * @param listener
+         * @return
+         */
+        public Builder setMetricsListener(@Nullable MetricsListenerInterface listener) {
+            this.metricsListener = listener;
+            return this;
+        }
+
         /** Private API */
         @InternalSdkEmbeddingApi(purpose = "Allow override of stats data in x-plat SDKs")
         public Builder setRuntimeInfo(JSONObject info) {
@@ -259,7 +421,12 @@ public final class KumulosConfig {
             newConfig.setSecretKey(secretKey);
             newConfig.setNotificationSmallIconId(notificationSmallIconDrawableId);
             newConfig.setCrashReportingEnabled(enableCrashReporting);
+            newConfig.setEventUploadCompressionEnabled(enableEventUploadCompression);
+            newConfig.setInAppWebViewPrewarmingEnabled(enableInAppWebViewPrewarming);
+            newConfig.setTraceRecordingEnabled(enableTraceRecording);
+            newConfig.setDeferredInitializationEnabled(enableDeferredInitialization);
             newConfig.setSessionIdleTimeoutSeconds(sessionIdleTimeoutSeconds);
+            newConfig.setEventStoreLimits(maxStoredEvents, maxStoredEventBytes);
             newConfig.setRuntimeInfo(this.runtimeInfo);
             newConfig.setSdkInfo(this.sdkInfo);
             newConfig.setBaseUrlMap(this.baseUrlMap);
@@ -268,6 +435,7 @@ public final class KumulosConfig {
 
             newConfig.setCname(this.deepLinkCname);
             newConfig.setDeferredDeepLinkHandler(this.deferredDeepLinkHandler);
+            newConfig.setMetricsListener(this.metricsListener);
 
             return newConfig;
         }
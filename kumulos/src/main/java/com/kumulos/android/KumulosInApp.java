@@ -7,6 +7,7 @@ import android.content.SharedPreferences;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import androidx.annotation.NonNull;
@@ -16,6 +17,8 @@ public class KumulosInApp {
     static InAppDeepLinkHandlerInterface inAppDeepLinkHandler = null;
     static Application application;
     static InAppMessagePresenter presenter;
+    // Presentations requested before deferred initialization creates the presenter, main thread only
+    private static List<Runnable> presentationsAwaitingPresenter = new ArrayList<>();
 
     public enum InboxMessagePresentationResult {
         FAILED,
@@ -33,6 +36,18 @@ public class KumulosInApp {
         void run(@Nullable InAppInboxSummary summary);
     }
 
+    public interface InAppInboxItemsHandler {
+        void run(@NonNull List<InAppInboxItem> items);
+    }
+
+    public interface InAppInboxPresentationHandler {
+        void run(@NonNull InboxMessagePresentationResult result);
+    }
+
+    public interface InAppInboxResultHandler {
+        void run(boolean success);
+    }
+
     //==============================================================================================
     //-- Public APIs
 
@@ -50,6 +65,25 @@ public class KumulosInApp {
         return InAppMessageService.readInboxItems(context);
     }
 
+    /**
+     * Asynchronously reads up to 50 non-expired in-app messages stored in inbox, then runs the
+     * handler on UI thread with the items.
+     *
+     * Unlike getInboxItems, this does not block the calling thread & the read does not wait
+     * behind queued SDK writes.
+     *
+     * @param context
+     * @param handler handler
+     */
+    public static void getInboxItemsAsync(@NonNull Context context, @NonNull InAppInboxItemsHandler handler) {
+        boolean inAppEnabled = isInAppEnabled();
+        if (!inAppEnabled) {
+            throw new RuntimeException("Kumulos: It is only possible to read In App inbox if In App messaging is enabled");
+        }
+
+        InAppMessageService.readInboxItemsAsync(context, handler);
+    }
+
     /**
      * Presents selected inbox item
      *
@@ -65,6 +99,23 @@ public class KumulosInApp {
         return InAppMessageService.presentMessage(context, item);
     }
 
+    /**
+     * Asynchronously presents selected inbox item, then runs the handler on UI thread with the
+     * presentation result
+     *
+     * @param context
+     * @param item inbox item to present
+     * @param handler handler
+     */
+    public static void presentInboxMessageAsync(@NonNull Context context, @NonNull InAppInboxItem item, @NonNull InAppInboxPresentationHandler handler) {
+        boolean inAppEnabled = isInAppEnabled();
+        if (!inAppEnabled) {
+            throw new RuntimeException("Kumulos: It is only possible to present In App inbox if In App messaging is enabled");
+        }
+
+        InAppMessageService.presentMessageAsync(context, item, handler);
+    }
+
     /**
      * Deletes selected inbox item
      *
@@ -75,6 +126,18 @@ public class KumulosInApp {
         return InAppMessageService.deleteMessageFromInbox(context, item.getId());
     }
 
+    /**
+     * Asynchronously deletes selected inbox item, then runs the optional handler on UI thread
+     * with whether the item was deleted
+     *
+     * @param context
+     * @param item inbox item to delete
+     * @param handler handler
+     */
+    public static void deleteMessageFromInboxAsync(@NonNull Context context, @NonNull InAppInboxItem item, @Nullable InAppInboxResultHandler handler) {
+        InAppMessageService.deleteMessageFromInboxAsync(context, item.getId(), handler);
+    }
+
     /**
      * Marks selected inbox item as read
      *
@@ -92,6 +155,25 @@ public class KumulosInApp {
         return res;
     }
 
+    /**
+     * Asynchronously marks selected inbox item as read, then runs the optional handler on UI
+     * thread with whether the item was marked
+     *
+     * @param context
+     * @param item inbox item to mark as read
+     * @param handler handler
+     */
+    public static void markAsReadAsync(@NonNull Context context, @NonNull InAppInboxItem item, @Nullable InAppInboxResultHandler handler) {
+        if (item.isRead()) {
+            if (handler != null) {
+                Kumulos.handler.post(() -> handler.run(false));
+            }
+            return;
+        }
+
+        InAppMessageService.markInboxItemReadAsync(context, item.getId(), handler);
+    }
+
     /**
      * Marks all inbox items as read.
      *
@@ -101,6 +183,17 @@ public class KumulosInApp {
         return InAppMessageService.markAllInboxItemsAsRead(context);
     }
 
+    /**
+     * Asynchronously marks all inbox items as read, then runs the optional handler on UI thread
+     * with whether all items were marked
+     *
+     * @param context
+     * @param handler handler
+     */
+    public static void markAllInboxItemsAsReadAsync(@NonNull Context context, @Nullable InAppInboxResultHandler handler) {
+        InAppMessageService.markAllInboxItemsAsReadAsync(context, handler);
+    }
+
     /**
      * Set a handler to run when inbox has changes which might be relevant for presentation.
      * These concern messages with inbox set: fetched new message, message evicted, message opened, message deleted, message marked as read.
@@ -119,8 +212,7 @@ public class KumulosInApp {
      * @param inboxSummaryHandler handler
      */
     public static void getInboxSummaryAsync(@NonNull Context context, @NonNull InAppInboxSummaryHandler inboxSummaryHandler) {
-        Runnable task = new InAppContract.ReadInboxSummaryRunnable(context, inboxSummaryHandler);
-        Kumulos.executorService.submit(task);
+        InAppMessageService.readInboxSummaryAsync(context, inboxSummaryHandler);
     }
 
 
@@ -171,11 +263,31 @@ public class KumulosInApp {
             clearLastSyncTime(application);
         }
 
-        presenter = new InAppMessagePresenter(application);
+        presenter = new InAppMessagePresenter(application, currentConfig.inAppWebViewPrewarmingEnabled());
+
+        for (Runnable presentation : presentationsAwaitingPresenter) {
+            presentation.run();
+        }
+        presentationsAwaitingPresenter.clear();
 
         toggleInAppMessageMonitoring(inAppEnabled);
     }
 
+    /**
+     * Presents the messages, or holds them until the presenter exists if deferred initialization
+     * hasn't created it yet
+     */
+    static void presentMessages(List<InAppMessage> itemsToPresent, @Nullable List<Integer> tickleIds) {
+        Kumulos.handler.post(() -> {
+            if (null == presenter) {
+                presentationsAwaitingPresenter.add(() -> presenter.presentMessages(itemsToPresent, tickleIds));
+                return;
+            }
+
+            presenter.presentMessages(itemsToPresent, tickleIds);
+        });
+    }
+
     private static void updateInAppEnablementFlags(boolean enabled) {
         updateRemoteInAppEnablementFlag(enabled);
         updateLocalInAppEnablementFlag(enabled);
@@ -209,6 +321,8 @@ public class KumulosInApp {
         SharedPreferences.Editor editor = prefs.edit();
         editor.remove(SharedPrefs.IN_APP_LAST_SYNC_TIME);
         editor.apply();
+
+        InAppRequestService.clearSyncValidator(context);
     }
 
     static void handleInAppUserChange(Context context, KumulosConfig currentConfig) {
@@ -239,9 +353,7 @@ public class KumulosInApp {
     }
 
     private static void fetchMessages() {
-        Kumulos.executorService.submit(() -> {
-            InAppMessageService.fetch(KumulosInApp.application, true);
-        });
+        InAppMessageService.fetchAsync(KumulosInApp.application, true);
     }
 
     static void maybeRunInboxUpdatedHandler(boolean inboxNeedsUpdate) {
@@ -22,6 +22,9 @@ public class KumulosInitProvider extends ContentProvider {
         Application application = (Application) getContext().getApplicationContext();
         application.registerActivityLifecycleCallbacks(appStateWatcher);
 
+        // Providers are created before Application.onCreate, so the ID is usually ready for Kumulos.initialize()
+        Installation.preload(application);
+
         return true;
     }
 
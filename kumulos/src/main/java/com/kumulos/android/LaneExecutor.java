@@ -0,0 +1,226 @@
+package com.kumulos.android;
+
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Executor for one lane of SDK background work, with named threads & queue depth metrics.
+ *
+ * Serial lanes run tasks one at a time in submission order. Bounded lanes run a small pool of
+ * threads behind a bounded queue; once the queue is full, app background submitters run the task
+ * themselves to slow them down. Tasks submitted from the main thread or from another lane are
+ * queued on a shared overflow lane instead, so the UI never blocks on SDK work & one lane never
+ * runs (and possibly deadlocks on) another lane's work. The overflow lane has a small fixed pool,
+ * so a burst of submissions queues up rather than starting a thread per task.
+ *
+ * When metrics or tracing are enabled, each task is timed & run inside a trace section named
+ * after the lane & the submitted task's class.
+ */
+final class LaneExecutor extends ThreadPoolExecutor {
+
+    private static final String TAG = LaneExecutor.class.getName();
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+    private static final int OVERFLOW_LANE_THREADS = 2;
+
+    private final String name;
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private LaneExecutor(String name, int threads, BlockingQueue<Runnable> queue) {
+        super(threads, threads, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, queue, new LaneThreadFactory(name));
+        this.name = name;
+        ((LaneThreadFactory) getThreadFactory()).lane = this;
+        allowCoreThreadTimeOut(true);
+    }
+
+    static LaneExecutor serial(String name) {
+        return new LaneExecutor(name, 1, new LinkedBlockingQueue<>());
+    }
+
+    static LaneExecutor bounded(String name, int threads, int queueCapacity) {
+        LaneExecutor executor = new LaneExecutor(name, threads, new LinkedBlockingQueue<>(queueCapacity));
+        executor.setRejectedExecutionHandler(new BackPressurePolicy());
+
+        return executor;
+    }
+
+    /**
+     * @return a single thread executor for delays such as batch deadlines, whose tasks should
+     * only hand work on to a lane
+     */
+    static ScheduledExecutorService timer(String name) {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new LaneThreadFactory(name));
+        timer.setKeepAliveTime(IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        timer.allowCoreThreadTimeOut(true);
+
+        return timer;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(SdkMetrics.isEnabled() || SdkTracing.isEnabled() ? new InstrumentedTask(command) : command);
+
+        int depth = getQueue().size();
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * Queues a task already wrapped by the lane it was first submitted to
+     */
+    private void executeWrapped(Runnable task) {
+        super.execute(task);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new LaneFutureTask<>(runnable, value, runnable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new LaneFutureTask<>(callable, callable);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return whether the calling thread is one of this lane's threads
+     */
+    boolean ownsCurrentThread() {
+        Thread current = Thread.currentThread();
+        return current instanceof LaneThread && ((LaneThread) current).lane == this;
+    }
+
+    private static boolean isLaneThread() {
+        return Thread.currentThread() instanceof LaneThread;
+    }
+
+    private static class LaneThread extends Thread {
+        final LaneExecutor lane;
+
+        LaneThread(LaneExecutor lane, Runnable r, String threadName) {
+            super(r, threadName);
+            this.lane = lane;
+        }
+    }
+
+    /**
+     * Keeps hold of the submitted task, so it can be named rather than the future wrapping it
+     */
+    private static class LaneFutureTask<T> extends FutureTask<T> {
+        final Object task;
+
+        LaneFutureTask(Runnable runnable, T value, Object task) {
+            super(runnable, value);
+            this.task = task;
+        }
+
+        LaneFutureTask(Callable<T> callable, Object task) {
+            super(callable);
+            this.task = task;
+        }
+    }
+
+    /**
+     * Traces the task & reports how long it waited in the queue & then ran
+     */
+    private class InstrumentedTask implements Runnable {
+        private final Runnable task;
+        private final long enqueuedAt = SdkMetrics.now();
+
+        InstrumentedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            Object submitted = task instanceof LaneFutureTask ? ((LaneFutureTask<?>) task).task : task;
+            String sectionName = "Kumulos " + name + ": " + SdkTracing.taskName(submitted);
+
+            long startedAt = SdkMetrics.now();
+            long traceStartedAt = SdkTracing.begin(sectionName);
+            try {
+                task.run();
+            } finally {
+                SdkTracing.end(sectionName, traceStartedAt);
+                SdkMetrics.laneTaskCompleted(name, getQueue().size(), startedAt - enqueuedAt, SdkMetrics.now() - startedAt);
+            }
+        }
+    }
+
+    // Created on first saturation, most processes never need it
+    private static class OverflowLane {
+        static final LaneExecutor INSTANCE = new LaneExecutor("overflow", OVERFLOW_LANE_THREADS, new LinkedBlockingQueue<>());
+    }
+
+    private static class LaneThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger threadCount = new AtomicInteger();
+        // Set once the lane is constructed, before any thread is created. Null for timers.
+        private volatile LaneExecutor lane;
+
+        LaneThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Runnable backgroundRunnable = () -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            };
+
+            return new LaneThread(lane, backgroundRunnable, "kumulos-" + name + "-" + threadCount.incrementAndGet());
+        }
+    }
+
+    private static class BackPressurePolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                return;
+            }
+
+            LaneExecutor lane = (LaneExecutor) executor;
+            String laneName = lane.getName();
+
+            // Running inline on a lane thread could block that lane on this one, e.g. the DB lane
+            // waiting on itself for a result
+            if (Looper.myLooper() == Looper.getMainLooper() || isLaneThread()) {
+                Kumulos.log(TAG, "Lane " + laneName + " is saturated, queueing task on the overflow lane");
+                OverflowLane.INSTANCE.executeWrapped(r);
+                return;
+            }
+
+            Kumulos.log(TAG, "Lane " + laneName + " is saturated, running task on the submitting thread");
+            r.run();
+        }
+    }
+}
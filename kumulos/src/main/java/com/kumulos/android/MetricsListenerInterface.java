@@ -0,0 +1,64 @@
+package com.kumulos.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Receives measurements of the SDK's own work, e.g. to forward to an app's monitoring.
+ *
+ * Callbacks run synchronously on the thread doing the measured work, so implementations should
+ * only record the values & return quickly. Durations are in milliseconds.
+ */
+public interface MetricsListenerInterface {
+    /**
+     * A task finished on one of the SDK's background executor lanes
+     *
+     * @param lane name of the lane, e.g. "db" or "net"
+     * @param queueDepth tasks still waiting on the lane
+     * @param queuedMillis time the task waited before starting
+     * @param runMillis time the task took to run
+     */
+    void onLaneTaskCompleted(@NonNull String lane, int queueDepth, long queuedMillis, long runMillis);
+
+    /**
+     * @param database "analytics" or "inApp"
+     * @param operation short name of the operation, e.g. "insertEvents"
+     */
+    void onDbOperation(@NonNull String database, @NonNull String operation, long durationMillis);
+
+    /**
+     * @param service the Kumulos service called, or null for other hosts
+     * @param bytesSent request body bytes
+     * @param bytesReceived response body bytes
+     * @param connectionReused whether the call used an already-open pooled connection rather than
+     *                         opening its own
+     */
+    void onHttpCallCompleted(@Nullable UrlBuilder.Service service, long durationMillis, long bytesSent, long bytesReceived, boolean connectionReused, boolean succeeded);
+
+    /**
+     * @param eventCount events in the uploaded batch
+     * @param bytes size of the batch as written, before any compression
+     * @param bytesOnWire size of the request body as sent, which is smaller than bytes when the
+     *                    upload was compressed
+     */
+    void onEventBatchUploaded(int eventCount, long bytes, long bytesOnWire, long durationMillis);
+
+    /**
+     * @param storedEvents analytics events stored on the device waiting to be uploaded
+     */
+    void onEventBacklogChanged(long storedEvents);
+
+    /**
+     * @param pushToDisplayMillis time from the push being sent until its notification was shown
+     */
+    void onNotificationDisplayed(long pushToDisplayMillis);
+
+    /**
+     * A notification picture was looked up in the image cache
+     *
+     * @param cacheResult "memoryHit", "diskHit" or "miss" (downloaded)
+     * @param loadMillis time to get the decoded picture, including any download
+     * @param succeeded whether the picture was loaded
+     */
+    void onNotificationImageLoaded(@NonNull String cacheResult, long loadMillis, boolean succeeded);
+}
@@ -0,0 +1,265 @@
+package com.kumulos.android;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.ByteString;
+
+/**
+ * Two level cache of notification pictures, keyed by the complete picture URL.
+ *
+ * Decoded bitmaps are kept in a small in-memory LRU, and downloaded image files in a size-bounded
+ * disk cache evicted least recently used first. Campaigns reusing an image therefore download it
+ * once per device rather than for every push.
+ */
+final class NotificationImageCache {
+
+    private static final String TAG = NotificationImageCache.class.getName();
+
+    private static final String DIR_NAME = "kumulos_notification_images";
+    private static final long MAX_DISK_BYTES = 20 * 1024 * 1024;
+    private static final long MAX_IMAGE_BYTES = 5 * 1024 * 1024;
+    private static final int MAX_MEMORY_BYTES = 4 * 1024 * 1024;
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int DOWNLOAD_LOCK_STRIPES = 16;
+
+    private static final Object diskLock = new Object();
+    // Striped by URL, so concurrent loads of one picture download it once
+    private static final Object[] downloadLocks = new Object[DOWNLOAD_LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < DOWNLOAD_LOCK_STRIPES; ++i) {
+            downloadLocks[i] = new Object();
+        }
+    }
+
+    private static final LruCache<String, Bitmap> memoryCache = new LruCache<String, Bitmap>(MAX_MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+
+    @Nullable
+    private static OkHttpClient fallbackHttpClient;
+
+    private NotificationImageCache() {
+    }
+
+    /**
+     * Returns the picture decoded to no more than needed for the given size, downloading it if
+     * it isn't cached
+     *
+     * @param deadlineElapsedMillis SystemClock.elapsedRealtime() by which any download must complete
+     * @return The bitmap, or null if it couldn't be loaded in time
+     */
+    @WorkerThread
+    @Nullable
+    static Bitmap load(@NonNull Context context, @NonNull URL url, int targetWidth, int targetHeight, long deadlineElapsedMillis) {
+        String key = url.toString();
+        long startedAt = SdkMetrics.now();
+
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            Kumulos.log(TAG, "Notification picture memory hit");
+            SdkMetrics.notificationImageLoaded(SdkMetrics.IMAGE_MEMORY_HIT, startedAt, true);
+            return bitmap;
+        }
+
+        File dir = new File(context.getCacheDir(), DIR_NAME);
+        File file = new File(dir, ByteString.encodeUtf8(key).sha256().hex());
+
+        String cacheResult;
+        synchronized (downloadLocks[(key.hashCode() & 0x7fffffff) % DOWNLOAD_LOCK_STRIPES]) {
+            if (file.exists()) {
+                cacheResult = SdkMetrics.IMAGE_DISK_HIT;
+                Kumulos.log(TAG, "Notification picture disk hit");
+                // Marks it recently used for eviction
+                //noinspection ResultOfMethodCallIgnored
+                file.setLastModified(System.currentTimeMillis());
+            } else {
+                cacheResult = SdkMetrics.IMAGE_MISS;
+                Kumulos.log(TAG, "Notification picture miss, downloading");
+                if (!download(key, dir, file, deadlineElapsedMillis)) {
+                    SdkMetrics.notificationImageLoaded(cacheResult, startedAt, false);
+                    return null;
+                }
+            }
+        }
+
+        bitmap = decodeSampled(file, targetWidth, targetHeight);
+        if (bitmap != null) {
+            memoryCache.put(key, bitmap);
+        }
+
+        SdkMetrics.notificationImageLoaded(cacheResult, startedAt, bitmap != null);
+
+        return bitmap;
+    }
+
+    //==============================================================================================
+    //-- Internal helpers
+
+    private static boolean download(String url, File dir, File file, long deadlineElapsedMillis) {
+        long remaining = deadlineElapsedMillis - SystemClock.elapsedRealtime();
+        if (remaining <= 0 || (!dir.isDirectory() && !dir.mkdirs())) {
+            return false;
+        }
+
+        Request request = new Request.Builder().url(url).get().build();
+        File tmp;
+        try {
+            // Unique per download, so a write can never interleave with another
+            tmp = File.createTempFile(file.getName() + "-", TMP_SUFFIX, dir);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        Call call = getHttpClient().newCall(request);
+        // Covers the whole call including reading the body, so the download can't overrun
+        call.timeout().timeout(remaining, TimeUnit.MILLISECONDS);
+
+        try (Response response = call.execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null || body.contentLength() > MAX_IMAGE_BYTES) {
+                return false;
+            }
+
+            long size = 0;
+            try (InputStream in = body.byteStream(); OutputStream out = new FileOutputStream(tmp)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    size += read;
+                    if (size > MAX_IMAGE_BYTES) {
+                        break;
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            synchronized (diskLock) {
+                if (size > MAX_IMAGE_BYTES || !tmp.renameTo(file)) {
+                    //noinspection ResultOfMethodCallIgnored
+                    tmp.delete();
+                    return false;
+                }
+
+                evict(dir);
+            }
+
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Must be called holding the disk lock
+     */
+    private static void evict(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // In-progress downloads aren't counted or evicted
+        List<File> cached = new ArrayList<>(files.length);
+        long totalSize = 0;
+        for (File f : files) {
+            if (f.getName().endsWith(TMP_SUFFIX)) {
+                continue;
+            }
+            cached.add(f);
+            totalSize += f.length();
+        }
+
+        if (totalSize <= MAX_DISK_BYTES) {
+            return;
+        }
+
+        Collections.sort(cached, (a, b) -> a.lastModified() < b.lastModified() ? -1 : (a.lastModified() == b.lastModified() ? 0 : 1));
+        for (File f : cached) {
+            if (totalSize <= MAX_DISK_BYTES) {
+                break;
+            }
+            totalSize -= f.length();
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+        }
+    }
+
+    /**
+     * Decodes with the largest power of two sample size keeping both dimensions at least the
+     * target size
+     */
+    @Nullable
+    private static Bitmap decodeSampled(File file, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            // Not an image, don't keep it around
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetWidth && options.outHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null) {
+            // Bounds decoded but the image data is broken, don't serve it again
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+
+        return bitmap;
+    }
+
+    private static synchronized OkHttpClient getHttpClient() {
+        if (Kumulos.isInitialized()) {
+            return Kumulos.getHttpClient();
+        }
+
+        // Pushes can be delivered before the app has initialized Kumulos
+        if (fallbackHttpClient == null) {
+            fallbackHttpClient = new OkHttpClient();
+        }
+
+        return fallbackHttpClient;
+    }
+}
@@ -13,28 +13,25 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.media.Ringtone;
 import android.media.RingtoneManager;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
 import androidx.core.app.NotificationManagerCompat;
 
 public class PushBroadcastReceiver extends BroadcastReceiver {
@@ -52,8 +49,24 @@ public class PushBroadcastReceiver extends BroadcastReceiver {
     static final String IMPORTANT_CHANNEL_ID = "kumulos_important_v1";
     protected static final String KUMULOS_NOTIFICATION_TAG = "kumulos";
 
+    // Receivers using goAsync() should finish within 10s, leave a margin for posting the notification
+    private static final long BROADCAST_BUDGET_MILLIS = 9000;
+    // Shows the text-only notification if the picture takes longer than this
+    private static final long TEXT_ONLY_FALLBACK_MILLIS = 2500;
+    // Expanded big picture notifications show at most this height
+    private static final int BIG_PICTURE_MAX_HEIGHT_DP = 256;
+    private static final int MEDIA_LANE_THREADS = 3;
+    private static final int MEDIA_LANE_QUEUE_CAPACITY = 32;
+
+    // Separate from the SDK lanes as pushes can arrive before Kumulos is initialized. Loads run in
+    // parallel, NotificationImageCache dedups downloads of one URL & gives each its own temp file
+    private static final LaneExecutor notificationMediaExecutor = LaneExecutor.bounded("media", MEDIA_LANE_THREADS, MEDIA_LANE_QUEUE_CAPACITY);
+
+    private long receivedAt;
+
     @Override
     final public void onReceive(Context context, Intent intent) {
+        receivedAt = SystemClock.elapsedRealtime();
         String action = intent.getAction();
         PushMessage pushMessage = intent.getParcelableExtra(PushMessage.EXTRAS_KEY);
 
@@ -105,15 +118,20 @@ public class PushBroadcastReceiver extends BroadcastReceiver {
         String pictureUrl = pushMessage.getPictureUrl();
         if (pictureUrl != null) {
             final PendingResult pendingResult = goAsync();
-            new LoadNotificationPicture(context, pendingResult, builder, pushMessage).execute();
+            long startedAt = receivedAt != 0 ? receivedAt : SystemClock.elapsedRealtime();
+            long deadline = startedAt + BROADCAST_BUDGET_MILLIS;
+            new LoadNotificationPicture(context, pendingResult, builder, pushMessage, deadline).start();
 
             return;
         }
 
-        this.showNotification(context, pushMessage, builder.build());
+        this.showNotification(context, pushMessage, builder.build(), false);
     }
 
-    private void showNotification(Context context, PushMessage pushMessage, Notification notification) {
+    /**
+     * @param isUpdate whether the notification replaces one already shown for this push
+     */
+    private void showNotification(Context context, PushMessage pushMessage, Notification notification, boolean isUpdate) {
 
         NotificationManager notificationManager =
                 (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
@@ -123,6 +141,10 @@ public class PushBroadcastReceiver extends BroadcastReceiver {
         }
 
         notificationManager.notify(KUMULOS_NOTIFICATION_TAG, this.getNotificationId(pushMessage), notification);
+
+        if (!isUpdate) {
+            SdkMetrics.notificationDisplayed(System.currentTimeMillis() - pushMessage.getTimeSent());
+        }
     }
 
     protected void pushTrackDelivered(Context context, PushMessage pushMessage) {
@@ -147,12 +169,7 @@ public class PushBroadcastReceiver extends BroadcastReceiver {
             return;
         }
 
-        Kumulos.executorService.submit(new Runnable() {
-            @Override
-            public void run() {
-                InAppMessageService.fetch(context, false);
-            }
-        });
+        InAppMessageService.fetchAsync(context, false);
     }
 
     private int getNotificationId(PushMessage pushMessage) {
@@ -484,81 +501,129 @@ public class PushBroadcastReceiver extends BroadcastReceiver {
         }
     }
 
-    private class LoadNotificationPicture extends AsyncTask<Void, Void, Bitmap> {
+    /**
+     * Loads a notification's picture on the media lane within the push's broadcast budget.
+     *
+     * If the picture isn't ready shortly after the push arrives, the notification is shown
+     * without it & updated silently if the picture arrives before the deadline. All state changes
+     * happen on the main thread.
+     */
+    private class LoadNotificationPicture implements Runnable {
         private final Notification.Builder builder;
         private final Context context;
         private final PushMessage pushMessage;
         private final PendingResult pendingResult;
+        private final long deadline;
 
-        //Theoretical time limit for BroadcastReceiver's bg execution is 30s. Leave 6s for connection.
-        //Practically ANR doesnt happen with even bigger 40+s timeouts.
-        private final int READ_TIMEOUT = 24000;
-        private final int CONNECTION_TIMEOUT = 6000;
+        private boolean textOnlyPosted = false;
+        private boolean finished = false;
 
-        LoadNotificationPicture(Context context, PendingResult pendingResult, Notification.Builder builder, PushMessage pushMessage) {
-            super();
+        private final Runnable textOnlyFallback = this::postTextOnlyIfPending;
+        private final Runnable deadlineReached = this::onDeadlineReached;
 
+        LoadNotificationPicture(Context context, PendingResult pendingResult, Notification.Builder builder, PushMessage pushMessage, long deadline) {
             this.builder = builder;
             this.pushMessage = pushMessage;
             this.context = context;
             this.pendingResult = pendingResult;
+            this.deadline = deadline;
+        }
+
+        @UiThread
+        void start() {
+            long now = SystemClock.elapsedRealtime();
+            Kumulos.handler.postDelayed(textOnlyFallback, Math.max(0, Math.min(now + TEXT_ONLY_FALLBACK_MILLIS, deadline) - now));
+            Kumulos.handler.postDelayed(deadlineReached, Math.max(0, deadline - now));
+
+            notificationMediaExecutor.submit(this);
         }
 
-        private URL getPictureUrl() throws MalformedURLException {
+        private URL getPictureUrl(DisplayMetrics metrics) throws MalformedURLException {
             String pictureUrl = this.pushMessage.getPictureUrl();
             if (pictureUrl == null) {
                 throw new RuntimeException("Kumulos: pictureUrl cannot be null at this point");
             }
 
-            DisplayMetrics metrics = Resources.getSystem().getDisplayMetrics();
             return MediaHelper.getCompletePictureUrl(pictureUrl, metrics.widthPixels);
         }
 
         @Override
-        protected Bitmap doInBackground(Void... params) {
-            InputStream in;
-            try {
-                URL url = this.getPictureUrl();
-
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setDoInput(true);
-                connection.setConnectTimeout(CONNECTION_TIMEOUT);
-                connection.setReadTimeout(READ_TIMEOUT);
-
-                connection.connect();
-                in = connection.getInputStream();
-                return BitmapFactory.decodeStream(in);
-            } catch (MalformedURLException e) {
-                e.printStackTrace();
-            } catch (SocketTimeoutException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
+        @WorkerThread
+        public void run() {
+            Bitmap picture = null;
+
+            // May have waited in the queue past the deadline during a burst
+            if (SystemClock.elapsedRealtime() < deadline) {
+                try {
+                    DisplayMetrics metrics = Resources.getSystem().getDisplayMetrics();
+                    URL url = this.getPictureUrl(metrics);
+                    int maxHeight = (int) (BIG_PICTURE_MAX_HEIGHT_DP * metrics.density);
+
+                    picture = NotificationImageCache.load(this.context, url, metrics.widthPixels, maxHeight, deadline);
+                } catch (MalformedURLException e) {
+                    e.printStackTrace();
+                }
             }
 
-            return null;
+            final Bitmap result = picture;
+            Kumulos.handler.post(() -> onPictureLoaded(result));
         }
 
-        @Override
-        protected void onPostExecute(Bitmap result) {
-            super.onPostExecute(result);
+        @UiThread
+        private void postTextOnlyIfPending() {
+            if (finished || textOnlyPosted) {
+                return;
+            }
 
-            if (result == null) {
-                Notification notification = this.builder.build();
-                PushBroadcastReceiver.this.showNotification(this.context, this.pushMessage, notification);
+            textOnlyPosted = true;
+            PushBroadcastReceiver.this.showNotification(this.context, this.pushMessage, this.builder.build(), false);
+        }
 
-                pendingResult.finish();
+        @UiThread
+        private void onPictureLoaded(@Nullable Bitmap picture) {
+            if (finished) {
                 return;
             }
 
+            if (picture == null) {
+                postTextOnlyIfPending();
+                finish();
+                return;
+            }
+
+            if (textOnlyPosted) {
+                // Already alerted for the text-only version
+                this.builder.setOnlyAlertOnce(true);
+            }
+
             Notification notification = this.builder
-                    .setLargeIcon(result)
+                    .setLargeIcon(picture)
                     .setStyle(new Notification.BigPictureStyle()
-                            .bigPicture(result)
+                            .bigPicture(picture)
                             .bigLargeIcon((Bitmap) null))
                     .build();
 
-            PushBroadcastReceiver.this.showNotification(this.context, this.pushMessage, notification);
+            PushBroadcastReceiver.this.showNotification(this.context, this.pushMessage, notification, textOnlyPosted);
+            finish();
+        }
+
+        @UiThread
+        private void onDeadlineReached() {
+            if (finished) {
+                return;
+            }
+
+            Kumulos.log(TAG, "Notification picture not loaded before the broadcast deadline");
+            postTextOnlyIfPending();
+            finish();
+        }
+
+        @UiThread
+        private void finish() {
+            finished = true;
+            Kumulos.handler.removeCallbacks(textOnlyFallback);
+            Kumulos.handler.removeCallbacks(deadlineReached);
+
             pendingResult.finish();
         }
     }
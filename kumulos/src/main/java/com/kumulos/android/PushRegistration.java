@@ -152,7 +152,7 @@ final class PushRegistration {
                 Method getToken = instance.getClass().getMethod("getToken");
                 Task<String> result = (Task<String>) getToken.invoke(instance);
 
-                result.addOnCompleteListener(Kumulos.executorService, task -> {
+                result.addOnCompleteListener(Kumulos.schedulingExecutor, task -> {
                     if (!task.isSuccessful()) {
                         Log.w(TAG, "Fetching FCM registration token failed for FirebaseMessaging >=21.0.0 ", task.getException());
                         return;
@@ -179,7 +179,7 @@ final class PushRegistration {
         private void registerFcmOld(Context context) {
             // Equivalent of:
             // Task<InstanceIdResult> result = com.google.firebase.iid.FirebaseInstanceId.getInstance().getInstanceId();
-            // result.addOnSuccessListener(Kumulos.executorService, instanceIdResult ->
+            // result.addOnSuccessListener(Kumulos.schedulingExecutor, instanceIdResult ->
             //        Kumulos.pushTokenStore(context, PushTokenType.FCM, instanceIdResult.getToken()));
 
             Exception exception = null;
@@ -204,7 +204,7 @@ final class PushRegistration {
                 };
 
                 Method addOnSuccessListenerMethod = task.getClass().getMethod("addOnSuccessListener", Executor.class, OnSuccessListener.class);
-                addOnSuccessListenerMethod.invoke(task, Kumulos.executorService, callback);
+                addOnSuccessListenerMethod.invoke(task, Kumulos.schedulingExecutor, callback);
             } catch (ClassNotFoundException e) {
                 exception = e;
             } catch (NoSuchMethodException e) {
@@ -301,7 +301,7 @@ final class PushRegistration {
                 Method deleteToken = instance.getClass().getMethod("deleteToken");
                 Task<Void> result = (Task<Void>) deleteToken.invoke(instance);
 
-                result.addOnCompleteListener(Kumulos.executorService, task -> {
+                result.addOnCompleteListener(Kumulos.schedulingExecutor, task -> {
                     if (!task.isSuccessful()) {
                         Log.w(TAG, "Deleting FCM registration token failed for FirebaseMessaging >=21.0.0 ", task.getException());
                         return;
@@ -347,7 +347,7 @@ final class PushRegistration {
                 };
 
                 Method addOnSuccessListenerMethod = task.getClass().getMethod("addOnSuccessListener", Executor.class, OnSuccessListener.class);
-                addOnSuccessListenerMethod.invoke(task, Kumulos.executorService, callback);
+                addOnSuccessListenerMethod.invoke(task, Kumulos.schedulingExecutor, callback);
             } catch (ClassNotFoundException e) {
                 exception = e;
             } catch (NoSuchMethodException e) {
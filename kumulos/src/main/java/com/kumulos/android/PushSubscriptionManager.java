@@ -70,6 +70,10 @@ public class PushSubscriptionManager {
             return;
         }
 
+        if (Kumulos.deferUntilInitialized(() -> subscribe(c, uuids, callback))) {
+            return;
+        }
+
         OkHttpClient httpClient = Kumulos.getHttpClient();
 
         String url = this.getSubscriptionRequestBaseUrl(c) + "/channels/subscriptions";
@@ -149,6 +153,10 @@ public class PushSubscriptionManager {
             return;
         }
 
+        if (Kumulos.deferUntilInitialized(() -> unsubscribe(c, uuids, callback))) {
+            return;
+        }
+
         OkHttpClient httpClient = Kumulos.getHttpClient();
 
         JSONObject params;
@@ -224,6 +232,10 @@ public class PushSubscriptionManager {
      * @param callback
      */
     public void setSubscriptions(Context c, String[] uuids, final Kumulos.Callback callback) {
+        if (Kumulos.deferUntilInitialized(() -> setSubscriptions(c, uuids, callback))) {
+            return;
+        }
+
         OkHttpClient httpClient = Kumulos.getHttpClient();
 
         JSONObject params;
@@ -312,6 +324,10 @@ public class PushSubscriptionManager {
      * @param callback
      */
     public void listChannels(Context c, final Kumulos.ResultCallback<List<PushChannel>> callback) {
+        if (Kumulos.deferUntilInitialized(() -> listChannels(c, callback))) {
+            return;
+        }
+
         OkHttpClient httpClient = Kumulos.getHttpClient();
 
         String url = this.getSubscriptionRequestBaseUrl(c) + "/channels";
@@ -414,6 +430,10 @@ public class PushSubscriptionManager {
             return;
         }
 
+        if (Kumulos.deferUntilInitialized(() -> createChannel(c, uuid, subscribe, name, showInPortal, meta, callback))) {
+            return;
+        }
+
         OkHttpClient httpClient = Kumulos.getHttpClient();
         String userIdentifier = Kumulos.getCurrentUserIdentifier(c);
 
@@ -0,0 +1,144 @@
+package com.kumulos.android;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Reports SDK measurements to the configured metrics listener.
+ *
+ * Without a listener every call returns after a single volatile read, and callers skip timing
+ * work entirely by checking isEnabled(). Nothing here takes a lock.
+ */
+final class SdkMetrics {
+
+    private static final String TAG = SdkMetrics.class.getName();
+
+    static final String DB_ANALYTICS = "analytics";
+    static final String DB_IN_APP = "inApp";
+
+    static final String IMAGE_MEMORY_HIT = "memoryHit";
+    static final String IMAGE_DISK_HIT = "diskHit";
+    static final String IMAGE_MISS = "miss";
+
+    @Nullable
+    private static volatile MetricsListenerInterface listener;
+
+    private SdkMetrics() {
+    }
+
+    static void setListener(@Nullable MetricsListenerInterface metricsListener) {
+        listener = metricsListener;
+    }
+
+    static boolean isEnabled() {
+        return listener != null;
+    }
+
+    static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    static void laneTaskCompleted(@NonNull String lane, int queueDepth, long queuedMillis, long runMillis) {
+        MetricsListenerInterface l = listener;
+        if (l == null) {
+            return;
+        }
+
+        try {
+            l.onLaneTaskCompleted(lane, queueDepth, queuedMillis, runMillis);
+        } catch (RuntimeException e) {
+            logListenerFailure(e);
+        }
+    }
+
+    /**
+     * @param startedAt value of now() when the operation started
+     */
+    static void dbOperation(@NonNull String database, @NonNull String operation, long startedAt) {
+        MetricsListenerInterface l = listener;
+        if (l == null) {
+            return;
+        }
+
+        try {
+            l.onDbOperation(database, operation, now() - startedAt);
+        } catch (RuntimeException e) {
+            logListenerFailure(e);
+        }
+    }
+
+    static void httpCallCompleted(@Nullable UrlBuilder.Service service, long durationMillis, long bytesSent, long bytesReceived, boolean connectionReused, boolean succeeded) {
+        MetricsListenerInterface l = listener;
+        if (l == null) {
+            return;
+        }
+
+        try {
+            l.onHttpCallCompleted(service, durationMillis, bytesSent, bytesReceived, connectionReused, succeeded);
+        } catch (RuntimeException e) {
+            logListenerFailure(e);
+        }
+    }
+
+    static void eventBatchUploaded(int eventCount, long bytes, long bytesOnWire, long durationMillis) {
+        MetricsListenerInterface l = listener;
+        if (l == null) {
+            return;
+        }
+
+        try {
+            l.onEventBatchUploaded(eventCount, bytes, bytesOnWire, durationMillis);
+        } catch (RuntimeException e) {
+            logListenerFailure(e);
+        }
+    }
+
+    static void eventBacklogChanged(long storedEvents) {
+        MetricsListenerInterface l = listener;
+        if (l == null) {
+            return;
+        }
+
+        try {
+            l.onEventBacklogChanged(storedEvents);
+        } catch (RuntimeException e) {
+            logListenerFailure(e);
+        }
+    }
+
+    static void notificationDisplayed(long pushToDisplayMillis) {
+        MetricsListenerInterface l = listener;
+        if (l == null) {
+            return;
+        }
+
+        try {
+            l.onNotificationDisplayed(pushToDisplayMillis);
+        } catch (RuntimeException e) {
+            logListenerFailure(e);
+        }
+    }
+
+    /**
+     * @param startedAt value of now() when the load started
+     */
+    static void notificationImageLoaded(@NonNull String cacheResult, long startedAt, boolean succeeded) {
+        MetricsListenerInterface l = listener;
+        if (l == null) {
+            return;
+        }
+
+        try {
+            l.onNotificationImageLoaded(cacheResult, now() - startedAt, succeeded);
+        } catch (RuntimeException e) {
+            logListenerFailure(e);
+        }
+    }
+
+    // A broken listener mustn't break the SDK work being measured
+    private static void logListenerFailure(RuntimeException e) {
+        Kumulos.log(TAG, "Metrics listener failed: " + e.getMessage());
+    }
+}
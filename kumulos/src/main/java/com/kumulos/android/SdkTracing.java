@@ -0,0 +1,161 @@
+package com.kumulos.android;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.Trace;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Marks SDK background work as named trace sections, so it shows up in systrace / Perfetto
+ * captures, and optionally records it in-process for export in the Chrome trace event format.
+ *
+ * Recorded spans go into a fixed size ring buffer written without locks, so the oldest spans are
+ * overwritten once it's full. Times are from System.nanoTime(), the monotonic clock system traces
+ * use, so exported spans line up with the app's own traces.
+ */
+final class SdkTracing {
+
+    private static final String PACKAGE_PREFIX = SdkTracing.class.getPackage().getName() + ".";
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+    // Must be a power of two
+    private static final int RECORDER_CAPACITY = 4096;
+
+    private static final AtomicReferenceArray<Span> spans = new AtomicReferenceArray<>(RECORDER_CAPACITY);
+    private static final AtomicInteger nextSlot = new AtomicInteger();
+    private static volatile boolean recording = false;
+
+    private static class Span {
+        final String name;
+        final String threadName;
+        final int threadId;
+        final long startNanos;
+        final long durationNanos;
+
+        Span(String name, String threadName, int threadId, long startNanos, long durationNanos) {
+            this.name = name;
+            this.threadName = threadName;
+            this.threadId = threadId;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+    }
+
+    private SdkTracing() {
+    }
+
+    static void setRecording(boolean enabled) {
+        recording = enabled;
+    }
+
+    static boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * @return whether sections can currently be captured by either the recorder or a system trace
+     *
+     * Before API 29 there's no public way to check for an active system trace, so lane tasks are
+     * only traced there while recording (or when wrapped for metrics anyway).
+     */
+    static boolean isEnabled() {
+        if (recording) {
+            return true;
+        }
+
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && Trace.isEnabled();
+    }
+
+    /**
+     * Starts a section, which must be ended on the same thread
+     *
+     * @return start time to pass to end()
+     */
+    static long begin(@NonNull String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name.length() > MAX_SECTION_NAME_LENGTH ? name.substring(0, MAX_SECTION_NAME_LENGTH) : name);
+        }
+
+        return System.nanoTime();
+    }
+
+    static void end(@NonNull String name, long startNanos) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+
+        if (!recording) {
+            return;
+        }
+
+        Span span = new Span(name, Thread.currentThread().getName(), Process.myTid(), startNanos, System.nanoTime() - startNanos);
+        // Masking keeps the slot in range after the counter wraps around
+        spans.set(nextSlot.getAndIncrement() & (RECORDER_CAPACITY - 1), span);
+    }
+
+    /**
+     * @return the task's class name without the SDK package, e.g. "AnalyticsContract$TrimEventsRunnable"
+     */
+    static String taskName(@NonNull Object task) {
+        String name = task.getClass().getName();
+
+        return name.startsWith(PACKAGE_PREFIX) ? name.substring(PACKAGE_PREFIX.length()) : name;
+    }
+
+    /**
+     * @return recorded spans which ended within the window, as Chrome trace event format JSON
+     */
+    static String exportChromeTrace(long windowMillis) {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(windowMillis);
+
+        List<Span> recent = new ArrayList<>();
+        for (int i = 0; i < RECORDER_CAPACITY; ++i) {
+            Span span = spans.get(i);
+            if (span != null && span.startNanos + span.durationNanos >= cutoff) {
+                recent.add(span);
+            }
+        }
+
+        Collections.sort(recent, (a, b) -> a.startNanos < b.startNanos ? -1 : (a.startNanos == b.startNanos ? 0 : 1));
+
+        int pid = Process.myPid();
+        Set<Integer> namedThreads = new HashSet<>();
+        StringBuilder out = new StringBuilder("{\"traceEvents\":[");
+        boolean first = true;
+
+        for (Span span : recent) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+
+            if (namedThreads.add(span.threadId)) {
+                out.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(pid)
+                        .append(",\"tid\":").append(span.threadId)
+                        .append(",\"args\":{\"name\":").append(JSONObject.quote(span.threadName)).append("}},");
+            }
+
+            out.append("{\"name\":").append(JSONObject.quote(span.name))
+                    .append(",\"cat\":\"kumulos\",\"ph\":\"X\",\"pid\":").append(pid)
+                    .append(",\"tid\":").append(span.threadId)
+                    .append(",\"ts\":").append(TimeUnit.NANOSECONDS.toMicros(span.startNanos))
+                    .append(",\"dur\":").append(TimeUnit.NANOSECONDS.toMicros(span.durationNanos))
+                    .append('}');
+        }
+
+        out.append("],\"displayTimeUnit\":\"ms\"}");
+
+        return out.toString();
+    }
+}
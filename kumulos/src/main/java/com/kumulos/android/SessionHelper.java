@@ -51,7 +51,7 @@ public class SessionHelper implements AppStateWatcher.AppStateChangedListener {
 
             Kumulos.trackEvent(context, SessionHelper.EVENT_TYPE_FOREGROUND, null);
 
-            Kumulos.executorService.submit(() -> {
+            Kumulos.schedulingExecutor.submit(() -> {
                 WorkManager.getInstance(context).cancelUniqueWork(AnalyticsBackgroundEventWorker.TAG);
             });
         }
@@ -109,7 +109,7 @@ public class SessionHelper implements AppStateWatcher.AppStateChangedListener {
                 .putLong(AnalyticsBackgroundEventWorker.EXTRAS_KEY_TIMESTAMP, System.currentTimeMillis())
                 .build();
 
-        Kumulos.executorService.submit(() -> {
+        Kumulos.schedulingExecutor.submit(() -> {
             KumulosConfig config = Kumulos.getConfig();
 
             OneTimeWorkRequest.Builder taskBuilder = new OneTimeWorkRequest.Builder(AnalyticsBackgroundEventWorker.class)
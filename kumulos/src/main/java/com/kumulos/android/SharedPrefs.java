@@ -6,6 +6,9 @@ final class SharedPrefs {
     static final String KEY_USER_IDENTIFIER = "user_identifier";
     static final String IN_APP_ENABLED = "in_app_enabled";
     static final String IN_APP_LAST_SYNC_TIME = "in_app_last_sync_time";
+    static final String IN_APP_SYNC_VALIDATOR_URL = "in_app_sync_validator_url";
+    static final String IN_APP_SYNC_ETAG = "in_app_sync_etag";
+    static final String IN_APP_SYNC_LAST_MODIFIED = "in_app_sync_last_modified";
     static final String DEFERRED_LINK_CHECKED_KEY = "kumulos_ddl_checked";
     static final String KEY_NOTIFICATIONS_ENABLEMENT_STATUS = "notifications_enabled";
 }
\ No newline at end of file
@@ -0,0 +1,305 @@
+package com.kumulos.android;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Thread-safe conversion between dates & the timestamp strings used by the API & local DBs.
+ *
+ * The expected shapes are parsed & formatted by hand without allocating formatters. Anything
+ * else falls back to a per-thread SimpleDateFormat with the patterns previously used, so lenient
+ * inputs still parse as before.
+ */
+final class TimestampCodec {
+
+    private static final String ISO_8601_PATTERN = "yyyy-MM-dd'T'HH:mm:ssZ";
+    private static final String DB_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    private static final ThreadLocal<SimpleDateFormat> iso8601Fallback = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat format = new SimpleDateFormat(ISO_8601_PATTERN, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format;
+        }
+    };
+
+    private static final ThreadLocal<SimpleDateFormat> dbFallback = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat format = new SimpleDateFormat(DB_PATTERN, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format;
+        }
+    };
+
+    private TimestampCodec() {
+    }
+
+    //==============================================================================================
+    //-- ISO-8601 (API payloads)
+
+    /**
+     * Parses "yyyy-MM-ddTHH:mm:ss" with optional fractional seconds, followed by "Z" or a
+     * "+HH:mm", "+HHmm" or "+HH" offset (or the "-" equivalents)
+     */
+    @NonNull
+    static Date parseIso8601(@NonNull String value) throws ParseException {
+        return new Date(parseIso8601Millis(value));
+    }
+
+    static long parseIso8601Millis(@NonNull String value) throws ParseException {
+        long millis = parseIso8601Fast(value);
+        if (millis != Long.MIN_VALUE) {
+            return millis;
+        }
+
+        return iso8601Fallback.get().parse(value).getTime();
+    }
+
+    /**
+     * Formats as "yyyy-MM-ddTHH:mm:ssZ" in UTC
+     */
+    @NonNull
+    static String formatIso8601Utc(@NonNull Date date) {
+        char[] out = new char[20];
+        writeDateTime(out, date.getTime(), 'T');
+        out[19] = 'Z';
+
+        return new String(out);
+    }
+
+    //==============================================================================================
+    //-- DB ("yyyy-MM-dd HH:mm:ss" in UTC)
+
+    @NonNull
+    static Date parseDb(@NonNull String value) throws ParseException {
+        return new Date(parseDbMillis(value));
+    }
+
+    static long parseDbMillis(@NonNull String value) throws ParseException {
+        if (value.length() == 19 && value.charAt(10) == ' ') {
+            long millis = parseDateTime(value);
+            if (millis != Long.MIN_VALUE) {
+                return millis;
+            }
+        }
+
+        return dbFallback.get().parse(value).getTime();
+    }
+
+    @NonNull
+    static String formatDb(@NonNull Date date) {
+        return formatDb(date.getTime());
+    }
+
+    @NonNull
+    static String formatDb(long millis) {
+        char[] out = new char[19];
+        writeDateTime(out, millis, ' ');
+
+        return new String(out);
+    }
+
+    //==============================================================================================
+    //-- Parsing
+
+    /**
+     * @return epoch millis, or Long.MIN_VALUE when the value isn't in a shape handled here
+     */
+    private static long parseIso8601Fast(String value) {
+        int length = value.length();
+        if (length < 20 || value.charAt(10) != 'T') {
+            return Long.MIN_VALUE;
+        }
+
+        long millis = parseDateTime(value);
+        if (millis == Long.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+
+        int pos = 19;
+        if (value.charAt(pos) == '.') {
+            pos++;
+            int fractionStart = pos;
+            int fraction = 0;
+            while (pos < length && isDigit(value.charAt(pos))) {
+                // Digits past millisecond precision are dropped
+                if (pos - fractionStart < 3) {
+                    fraction = fraction * 10 + (value.charAt(pos) - '0');
+                }
+                pos++;
+            }
+
+            int digits = pos - fractionStart;
+            if (digits == 0) {
+                return Long.MIN_VALUE;
+            }
+            for (int i = digits; i < 3; ++i) {
+                fraction *= 10;
+            }
+            millis += fraction;
+        }
+
+        if (pos >= length) {
+            return Long.MIN_VALUE;
+        }
+
+        char zone = value.charAt(pos);
+        if (zone == 'Z') {
+            return pos + 1 == length ? millis : Long.MIN_VALUE;
+        }
+
+        if (zone != '+' && zone != '-') {
+            return Long.MIN_VALUE;
+        }
+
+        int offsetLength = length - pos - 1;
+        int offsetHours;
+        int offsetMinutes = 0;
+        if (offsetLength == 2) {
+            offsetHours = parseDigits(value, pos + 1, 2);
+        } else if (offsetLength == 4) {
+            offsetHours = parseDigits(value, pos + 1, 2);
+            offsetMinutes = parseDigits(value, pos + 3, 2);
+        } else if (offsetLength == 5 && value.charAt(pos + 3) == ':') {
+            offsetHours = parseDigits(value, pos + 1, 2);
+            offsetMinutes = parseDigits(value, pos + 4, 2);
+        } else {
+            return Long.MIN_VALUE;
+        }
+
+        if (offsetHours < 0 || offsetHours > 23 || offsetMinutes < 0 || offsetMinutes > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        long offsetMillis = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+
+        return zone == '+' ? millis - offsetMillis : millis + offsetMillis;
+    }
+
+    /**
+     * Reads "yyyy-MM-dd?HH:mm:ss" from the start of the value as UTC, ignoring the separator
+     * between date & time
+     *
+     * @return epoch millis, or Long.MIN_VALUE if malformed or out of range
+     */
+    private static long parseDateTime(String value) {
+        if (value.charAt(4) != '-' || value.charAt(7) != '-'
+                || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return Long.MIN_VALUE;
+        }
+
+        int year = parseDigits(value, 0, 4);
+        int month = parseDigits(value, 5, 2);
+        int day = parseDigits(value, 8, 2);
+        int hour = parseDigits(value, 11, 2);
+        int minute = parseDigits(value, 14, 2);
+        int second = parseDigits(value, 17, 2);
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + hour * MILLIS_PER_HOUR
+                + minute * MILLIS_PER_MINUTE
+                + second * MILLIS_PER_SECOND;
+    }
+
+    /**
+     * @return the parsed number, or -1 if any character isn't a digit
+     */
+    private static int parseDigits(String value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; ++i) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    //==============================================================================================
+    //-- Formatting
+
+    private static void writeDateTime(char[] out, long millis, char separator) {
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        long millisOfDay = millis - days * MILLIS_PER_DAY;
+
+        // Proleptic Gregorian calendar, inverse of daysFromCivil
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        int hour = (int) (millisOfDay / MILLIS_PER_HOUR);
+        int minute = (int) (millisOfDay / MILLIS_PER_MINUTE % 60);
+        int second = (int) (millisOfDay / MILLIS_PER_SECOND % 60);
+
+        writeDigits(out, 0, year, 4);
+        out[4] = '-';
+        writeDigits(out, 5, month, 2);
+        out[7] = '-';
+        writeDigits(out, 8, day, 2);
+        out[10] = separator;
+        writeDigits(out, 11, hour, 2);
+        out[13] = ':';
+        writeDigits(out, 14, minute, 2);
+        out[16] = ':';
+        writeDigits(out, 17, second, 2);
+    }
+
+    // Math.floorDiv needs API 24
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+
+    private static void writeDigits(char[] out, int start, int value, int count) {
+        for (int i = start + count - 1; i >= start; --i) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 in the proleptic Gregorian calendar. Out of range days roll over
+     * into the next month, as lenient SimpleDateFormat parsing does.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
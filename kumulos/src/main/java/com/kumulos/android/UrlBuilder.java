@@ -3,6 +3,8 @@ package com.kumulos.android;
 import java.util.HashMap;
 import java.util.Map;
 
+import androidx.annotation.Nullable;
+
 public class UrlBuilder {
 
     public enum Service {
@@ -34,6 +36,41 @@ public class UrlBuilder {
         return baseUrl + path;
     }
 
+    /**
+     * @return The service with the longest base URL the given URL is under, or null if none
+     */
+    @Nullable
+    Service serviceForUrl(String url) {
+        Service match = null;
+        int matchLength = -1;
+
+        for (Map.Entry<Service, String> entry : baseUrlMap.entrySet()) {
+            String baseUrl = entry.getValue();
+            if (baseUrl.length() <= matchLength || !isUnder(url, baseUrl)) {
+                continue;
+            }
+
+            match = entry.getKey();
+            matchLength = baseUrl.length();
+        }
+
+        return match;
+    }
+
+    private static boolean isUnder(String url, String baseUrl) {
+        if (!url.startsWith(baseUrl)) {
+            return false;
+        }
+
+        // Don't match a base URL that's only a prefix of another host or path segment
+        if (url.length() == baseUrl.length() || baseUrl.endsWith("/")) {
+            return true;
+        }
+
+        char next = url.charAt(baseUrl.length());
+        return next == '/' || next == '?' || next == '#';
+    }
+
     static Map<Service, String> defaultMapping() {
         Map<Service, String> baseUrlMap = new HashMap<>(Service.values().length);
 
@@ -0,0 +1,84 @@
+package com.kumulos.android;
+
+import org.junit.Test;
+
+import static com.kumulos.android.AnalyticsUploadHelper.BatchSizer.INITIAL_BATCH_SIZE;
+import static com.kumulos.android.AnalyticsUploadHelper.BatchSizer.MAX_BATCH_SIZE;
+import static com.kumulos.android.AnalyticsUploadHelper.BatchSizer.MIN_BATCH_SIZE;
+import static com.kumulos.android.AnalyticsUploadHelper.BatchSizer.TARGET_BATCH_BYTES;
+import static com.kumulos.android.AnalyticsUploadHelper.BatchSizer.TARGET_ROUND_TRIP_MILLIS;
+import static org.junit.Assert.assertEquals;
+
+public class BatchSizerTest {
+
+    private static final long SMALL_EVENT_BYTES = 100;
+
+    @Test
+    public void startsAtInitialSize() {
+        assertEquals(INITIAL_BATCH_SIZE, new AnalyticsUploadHelper.BatchSizer().getBatchSize());
+    }
+
+    @Test
+    public void growsAfterFullFastBatches() {
+        AnalyticsUploadHelper.BatchSizer sizer = new AnalyticsUploadHelper.BatchSizer();
+
+        sizer.onBatchUploaded(INITIAL_BATCH_SIZE, INITIAL_BATCH_SIZE * SMALL_EVENT_BYTES, 100);
+        assertEquals(INITIAL_BATCH_SIZE * 2, sizer.getBatchSize());
+
+        for (int i = 0; i < 10; ++i) {
+            int size = sizer.getBatchSize();
+            sizer.onBatchUploaded(size, size * SMALL_EVENT_BYTES, 100);
+        }
+        assertEquals(MAX_BATCH_SIZE, sizer.getBatchSize());
+    }
+
+    @Test
+    public void keepsSizeAfterPartialBatch() {
+        AnalyticsUploadHelper.BatchSizer sizer = new AnalyticsUploadHelper.BatchSizer();
+
+        sizer.onBatchUploaded(10, 10 * SMALL_EVENT_BYTES, 100);
+
+        assertEquals(INITIAL_BATCH_SIZE, sizer.getBatchSize());
+    }
+
+    @Test
+    public void shrinksAfterSlowBatch() {
+        AnalyticsUploadHelper.BatchSizer sizer = new AnalyticsUploadHelper.BatchSizer();
+
+        sizer.onBatchUploaded(INITIAL_BATCH_SIZE, INITIAL_BATCH_SIZE * SMALL_EVENT_BYTES, TARGET_ROUND_TRIP_MILLIS + 1);
+
+        assertEquals(INITIAL_BATCH_SIZE / 2, sizer.getBatchSize());
+    }
+
+    @Test
+    public void capsSizeByTargetBytes() {
+        AnalyticsUploadHelper.BatchSizer sizer = new AnalyticsUploadHelper.BatchSizer();
+        long largeEventBytes = TARGET_BATCH_BYTES / 40;
+
+        sizer.onBatchUploaded(INITIAL_BATCH_SIZE, INITIAL_BATCH_SIZE * largeEventBytes, 100);
+
+        assertEquals(40, sizer.getBatchSize());
+    }
+
+    @Test
+    public void halvesOnFailureDownToMinimum() {
+        AnalyticsUploadHelper.BatchSizer sizer = new AnalyticsUploadHelper.BatchSizer();
+
+        sizer.onBatchFailed();
+        assertEquals(INITIAL_BATCH_SIZE / 2, sizer.getBatchSize());
+
+        for (int i = 0; i < 10; ++i) {
+            sizer.onBatchFailed();
+        }
+        assertEquals(MIN_BATCH_SIZE, sizer.getBatchSize());
+    }
+
+    @Test
+    public void ignoresEmptyBatches() {
+        AnalyticsUploadHelper.BatchSizer sizer = new AnalyticsUploadHelper.BatchSizer();
+
+        sizer.onBatchUploaded(0, 0, TARGET_ROUND_TRIP_MILLIS * 10);
+
+        assertEquals(INITIAL_BATCH_SIZE, sizer.getBatchSize());
+    }
+}
@@ -0,0 +1,169 @@
+package com.kumulos.android;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class InAppInboxCacheTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+    @Before
+    public void unloadCache() throws Exception {
+        Field snapshot = InAppInboxCache.class.getDeclaredField("snapshot");
+        snapshot.setAccessible(true);
+        snapshot.set(null, null);
+    }
+
+    private static InAppInboxCache.Entry entry(int id, long sentAtMillis) {
+        return entry(id, sentAtMillis, null, null);
+    }
+
+    private static InAppInboxCache.Entry entry(int id, long sentAtMillis, Date availableFrom, Date availableTo) {
+        InAppInboxItem item = new InAppInboxItem();
+        item.setId(id);
+        item.setTitle("Message " + id);
+        item.setSentAt(new Date(sentAtMillis));
+        item.setAvailableFrom(availableFrom);
+        item.setAvailableTo(availableTo);
+
+        return new InAppInboxCache.Entry(item, "{}", null, null, sentAtMillis, sentAtMillis);
+    }
+
+    private static List<Integer> ids(List<InAppInboxItem> items) {
+        List<Integer> ids = new ArrayList<>(items.size());
+        for (InAppInboxItem item : items) {
+            ids.add(item.getId());
+        }
+
+        return ids;
+    }
+
+    @Test
+    public void installsLoadWithoutConcurrentChanges() {
+        long loadVersion = InAppInboxCache.currentVersion();
+
+        InAppInboxCache.Snapshot loaded = InAppInboxCache.install(Arrays.asList(entry(1, 1000)), loadVersion);
+
+        assertSame(loaded, InAppInboxCache.peek());
+        assertEquals(Arrays.asList(1), ids(loaded.getVisibleItems()));
+    }
+
+    @Test
+    public void discardsLoadRacingWithWrite() {
+        long loadVersion = InAppInboxCache.currentVersion();
+        // Committed whilst the load was reading the DB
+        InAppInboxCache.remove(1);
+
+        InAppInboxCache.Snapshot loaded = InAppInboxCache.install(Arrays.asList(entry(1, 1000)), loadVersion);
+
+        assertNull(InAppInboxCache.peek());
+        assertEquals(Arrays.asList(1), ids(loaded.getVisibleItems()));
+    }
+
+    @Test
+    public void keepsSnapshotInstalledByAnotherLoad() {
+        InAppInboxCache.Snapshot first = InAppInboxCache.install(Arrays.asList(entry(1, 1000)), InAppInboxCache.currentVersion());
+
+        InAppInboxCache.Snapshot second = InAppInboxCache.install(Arrays.asList(entry(2, 2000)), InAppInboxCache.currentVersion());
+
+        assertSame(first, second);
+        assertSame(first, InAppInboxCache.peek());
+    }
+
+    @Test
+    public void ignoresWritesBeforeLoad() {
+        InAppInboxCache.applySync(Arrays.asList(entry(1, 1000)), Collections.<Integer>emptyList());
+        InAppInboxCache.markRead(Arrays.asList(1), new Date());
+
+        assertNull(InAppInboxCache.peek());
+    }
+
+    @Test
+    public void appliesSyncNewestFirst() {
+        InAppInboxCache.clear();
+
+        InAppInboxCache.applySync(Arrays.asList(entry(1, 1000), entry(3, 3000)), Collections.<Integer>emptyList());
+        InAppInboxCache.applySync(Arrays.asList(entry(2, 2000), entry(1, 4000)), Arrays.asList(3));
+
+        InAppInboxCache.Snapshot snapshot = InAppInboxCache.peek();
+        assertNotNull(snapshot);
+        assertEquals(Arrays.asList(1, 2), ids(snapshot.getVisibleItems()));
+        assertNull(snapshot.get(3));
+        assertEquals(4000, snapshot.get(1).sentAtMillis);
+    }
+
+    @Test
+    public void publishesNewSnapshotOnWrite() {
+        InAppInboxCache.clear();
+        InAppInboxCache.applySync(Arrays.asList(entry(1, 1000), entry(2, 2000)), Collections.<Integer>emptyList());
+        InAppInboxCache.Snapshot before = InAppInboxCache.peek();
+        Date readAt = new Date();
+
+        InAppInboxCache.markRead(Arrays.asList(1), readAt);
+
+        InAppInboxCache.Snapshot after = InAppInboxCache.peek();
+        assertNotNull(before);
+        assertNotNull(after);
+        assertFalse(before.get(1).item.isRead());
+        assertTrue(after.get(1).item.isRead());
+        assertSame(before.get(2), after.get(2));
+        assertEquals(2, before.getSummary().getUnreadCount());
+        assertEquals(1, after.getSummary().getUnreadCount());
+    }
+
+    @Test
+    public void keepsFirstReadTimeWhenDismissed() {
+        InAppInboxCache.clear();
+        InAppInboxCache.applySync(Arrays.asList(entry(1, 1000)), Collections.<Integer>emptyList());
+        Date readAt = new Date(5000);
+        Date dismissedAt = new Date(6000);
+
+        InAppInboxCache.markRead(Arrays.asList(1), readAt);
+        InAppInboxCache.markDismissed(1, dismissedAt);
+
+        InAppInboxItem item = InAppInboxCache.peek().get(1).item;
+        assertEquals(readAt, item.getReadAt());
+        assertEquals(dismissedAt, item.getDismissedAt());
+    }
+
+    @Test
+    public void onlyShowsItemsInsideAvailabilityWindow() {
+        long now = System.currentTimeMillis();
+        InAppInboxCache.clear();
+        InAppInboxCache.applySync(Arrays.asList(
+                entry(1, 1000),
+                entry(2, 2000, new Date(now + HOUR_MILLIS), null),
+                entry(3, 3000, null, new Date(now - HOUR_MILLIS)),
+                entry(4, 4000, new Date(now - HOUR_MILLIS), new Date(now + HOUR_MILLIS))
+        ), Collections.<Integer>emptyList());
+
+        InAppInboxCache.Snapshot snapshot = InAppInboxCache.peek();
+
+        assertEquals(Arrays.asList(4, 1), ids(snapshot.getVisibleItems()));
+        InAppInboxSummary summary = snapshot.getSummary();
+        assertEquals(2, summary.getTotalCount());
+        assertEquals(2, summary.getUnreadCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void visibleItemsAreImmutable() {
+        InAppInboxCache.clear();
+        InAppInboxCache.applySync(Arrays.asList(entry(1, 1000)), Collections.<Integer>emptyList());
+
+        InAppInboxCache.peek().getVisibleItems().clear();
+    }
+}
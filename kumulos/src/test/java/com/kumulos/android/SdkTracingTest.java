@@ -0,0 +1,128 @@
+package com.kumulos.android;
+
+import android.os.Process;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SdkTracingTest {
+
+    private static final long WINDOW_MILLIS = 60 * 1000;
+
+    private MockedStatic<Process> process;
+
+    @Before
+    public void mockProcess() {
+        process = Mockito.mockStatic(Process.class);
+        process.when(Process::myPid).thenReturn(1000);
+        process.when(Process::myTid).thenAnswer(invocation -> (int) Thread.currentThread().getId());
+    }
+
+    @After
+    public void stopRecording() {
+        SdkTracing.setRecording(false);
+        process.close();
+    }
+
+    private static void recordSpan(String name) {
+        long startedAt = SdkTracing.begin(name);
+        SdkTracing.end(name, startedAt);
+    }
+
+    private static List<JSONObject> completeEvents(String json, String namePrefix) throws JSONException {
+        JSONArray events = new JSONObject(json).getJSONArray("traceEvents");
+        List<JSONObject> matching = new ArrayList<>();
+        for (int i = 0; i < events.length(); ++i) {
+            JSONObject event = events.getJSONObject(i);
+            if ("X".equals(event.getString("ph")) && event.getString("name").startsWith(namePrefix)) {
+                matching.add(event);
+            }
+        }
+
+        return matching;
+    }
+
+    @Test
+    public void exportsRecordedSpansInStartOrder() throws JSONException {
+        SdkTracing.setRecording(true);
+        recordSpan("order-first");
+        recordSpan("order-second");
+
+        String json = SdkTracing.exportChromeTrace(WINDOW_MILLIS);
+
+        List<JSONObject> events = completeEvents(json, "order-");
+        assertEquals(2, events.size());
+        assertEquals("order-first", events.get(0).getString("name"));
+        assertEquals("order-second", events.get(1).getString("name"));
+        assertEquals("kumulos", events.get(0).getString("cat"));
+        assertTrue(events.get(0).getLong("ts") <= events.get(1).getLong("ts"));
+        assertTrue(events.get(0).getLong("dur") >= 0);
+        assertEquals("ms", new JSONObject(json).getString("displayTimeUnit"));
+    }
+
+    @Test
+    public void namesEachThreadOnce() throws JSONException {
+        SdkTracing.setRecording(true);
+        recordSpan("thread-a");
+        recordSpan("thread-b");
+
+        JSONArray events = new JSONObject(SdkTracing.exportChromeTrace(WINDOW_MILLIS)).getJSONArray("traceEvents");
+
+        List<Integer> namedThreads = new ArrayList<>();
+        for (int i = 0; i < events.length(); ++i) {
+            JSONObject event = events.getJSONObject(i);
+            if ("M".equals(event.getString("ph"))) {
+                assertEquals("thread_name", event.getString("name"));
+                assertFalse(namedThreads.contains(event.getInt("tid")));
+                namedThreads.add(event.getInt("tid"));
+            }
+        }
+        assertFalse(namedThreads.isEmpty());
+    }
+
+    @Test
+    public void escapesSpanNames() throws JSONException {
+        SdkTracing.setRecording(true);
+        recordSpan("escape-\"quoted\"\\path");
+
+        List<JSONObject> events = completeEvents(SdkTracing.exportChromeTrace(WINDOW_MILLIS), "escape-");
+
+        assertEquals(1, events.size());
+        assertEquals("escape-\"quoted\"\\path", events.get(0).getString("name"));
+    }
+
+    @Test
+    public void skipsSpansOutsideWindow() throws JSONException, InterruptedException {
+        SdkTracing.setRecording(true);
+        recordSpan("window-old");
+        Thread.sleep(50);
+
+        List<JSONObject> events = completeEvents(SdkTracing.exportChromeTrace(10), "window-");
+
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void onlyRecordsWhilstEnabled() throws JSONException {
+        SdkTracing.setRecording(false);
+        recordSpan("disabled-span");
+
+        List<JSONObject> events = completeEvents(SdkTracing.exportChromeTrace(WINDOW_MILLIS), "disabled-");
+
+        assertTrue(events.isEmpty());
+        assertFalse(SdkTracing.isEnabled());
+    }
+}
@@ -0,0 +1,98 @@
+package com.kumulos.android;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimestampCodecTest {
+
+    private static long utcMillis(int year, int month, int day, int hour, int minute, int second) {
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, second);
+
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void parsesIso8601InUtc() throws ParseException {
+        assertEquals(utcMillis(2021, 3, 4, 5, 6, 7), TimestampCodec.parseIso8601Millis("2021-03-04T05:06:07Z"));
+    }
+
+    @Test
+    public void parsesIso8601FractionalSeconds() throws ParseException {
+        long base = utcMillis(2021, 3, 4, 5, 6, 7);
+
+        assertEquals(base + 500, TimestampCodec.parseIso8601Millis("2021-03-04T05:06:07.5Z"));
+        assertEquals(base + 120, TimestampCodec.parseIso8601Millis("2021-03-04T05:06:07.12Z"));
+        // Digits past millisecond precision are dropped
+        assertEquals(base + 123, TimestampCodec.parseIso8601Millis("2021-03-04T05:06:07.123456Z"));
+    }
+
+    @Test
+    public void parsesIso8601Offsets() throws ParseException {
+        long base = utcMillis(2021, 3, 4, 5, 6, 7);
+
+        assertEquals(base - 3600000, TimestampCodec.parseIso8601Millis("2021-03-04T05:06:07+01:00"));
+        assertEquals(base - 3600000, TimestampCodec.parseIso8601Millis("2021-03-04T05:06:07+0100"));
+        assertEquals(base - 3600000, TimestampCodec.parseIso8601Millis("2021-03-04T05:06:07+01"));
+        assertEquals(base + 19800000, TimestampCodec.parseIso8601Millis("2021-03-04T05:06:07-05:30"));
+        assertEquals(base - 3600000 + 250, TimestampCodec.parseIso8601Millis("2021-03-04T05:06:07.25+01:00"));
+    }
+
+    @Test
+    public void fallsBackToFormatterForOtherShapes() throws ParseException {
+        // Single digit month & day aren't handled by the fast path but parse leniently as before
+        assertEquals(utcMillis(2021, 3, 4, 5, 6, 7), TimestampCodec.parseIso8601Millis("2021-3-4T05:06:07+0000"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsMalformedIso8601() throws ParseException {
+        TimestampCodec.parseIso8601("not a timestamp");
+    }
+
+    @Test
+    public void formatsIso8601InUtc() {
+        assertEquals("2021-03-04T05:06:07Z", TimestampCodec.formatIso8601Utc(new Date(utcMillis(2021, 3, 4, 5, 6, 7) + 999)));
+        assertEquals("2020-02-29T23:59:59Z", TimestampCodec.formatIso8601Utc(new Date(utcMillis(2020, 2, 29, 23, 59, 59))));
+    }
+
+    @Test
+    public void roundTripsIso8601() throws ParseException {
+        long millis = utcMillis(1999, 12, 31, 23, 59, 59);
+
+        assertEquals(millis, TimestampCodec.parseIso8601(TimestampCodec.formatIso8601Utc(new Date(millis))).getTime());
+    }
+
+    @Test
+    public void parsesAndFormatsDbTimestamps() throws ParseException {
+        long millis = utcMillis(2021, 3, 4, 5, 6, 7);
+
+        assertEquals("2021-03-04 05:06:07", TimestampCodec.formatDb(millis));
+        assertEquals(millis, TimestampCodec.parseDbMillis("2021-03-04 05:06:07"));
+        assertEquals(millis, TimestampCodec.parseDb(TimestampCodec.formatDb(new Date(millis))).getTime());
+    }
+
+    @Test
+    public void handlesDatesBeforeEpoch() throws ParseException {
+        assertEquals("1969-12-31 23:59:59", TimestampCodec.formatDb(-1000));
+        assertEquals(-1000, TimestampCodec.parseDbMillis("1969-12-31 23:59:59"));
+        assertEquals("1900-01-01T00:00:00Z", TimestampCodec.formatIso8601Utc(new Date(utcMillis(1900, 1, 1, 0, 0, 0))));
+    }
+
+    @Test
+    public void rollsOverOutOfRangeDaysLikeLenientParsing() throws ParseException {
+        assertEquals(utcMillis(2021, 3, 2, 0, 0, 0), TimestampCodec.parseDbMillis("2021-02-30 00:00:00"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsMalformedDbTimestamp() throws ParseException {
+        TimestampCodec.parseDb("2021-03-04");
+    }
+}
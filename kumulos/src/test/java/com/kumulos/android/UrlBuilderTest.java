@@ -0,0 +1,60 @@
+package com.kumulos.android;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class UrlBuilderTest {
+
+    @Test
+    public void matchesServiceByBaseUrl() {
+        UrlBuilder builder = new UrlBuilder(UrlBuilder.defaultMapping());
+
+        assertEquals(UrlBuilder.Service.EVENTS, builder.serviceForUrl("https://events.kumulos.com/v1/app-installs/abc/events"));
+        assertEquals(UrlBuilder.Service.PUSH, builder.serviceForUrl("https://push.kumulos.com"));
+        assertEquals(UrlBuilder.Service.BACKEND, builder.serviceForUrl("https://api.kumulos.com?x=1"));
+        assertEquals(UrlBuilder.Service.MEDIA, builder.serviceForUrl("https://i.app.delivery#fragment"));
+    }
+
+    @Test
+    public void roundTripsUrlForService() {
+        UrlBuilder builder = new UrlBuilder(UrlBuilder.defaultMapping());
+
+        for (UrlBuilder.Service service : UrlBuilder.Service.values()) {
+            assertEquals(service, builder.serviceForUrl(builder.urlForService(service, "/v1/path")));
+        }
+    }
+
+    @Test
+    public void doesNotMatchPrefixOfAnotherHost() {
+        UrlBuilder builder = new UrlBuilder(UrlBuilder.defaultMapping());
+
+        assertNull(builder.serviceForUrl("https://api.kumulos.com.example.org/v1"));
+        assertNull(builder.serviceForUrl("https://example.org/"));
+    }
+
+    @Test
+    public void prefersLongestBaseUrl() {
+        Map<UrlBuilder.Service, String> mapping = UrlBuilder.defaultMapping();
+        mapping.put(UrlBuilder.Service.CRM, "https://proxy.example.org");
+        mapping.put(UrlBuilder.Service.PUSH, "https://proxy.example.org/push");
+        mapping.put(UrlBuilder.Service.EVENTS, "https://proxy.example.org/events/");
+        UrlBuilder builder = new UrlBuilder(mapping);
+
+        assertEquals(UrlBuilder.Service.PUSH, builder.serviceForUrl("https://proxy.example.org/push/v1/channels"));
+        assertEquals(UrlBuilder.Service.EVENTS, builder.serviceForUrl("https://proxy.example.org/events/v1"));
+        assertEquals(UrlBuilder.Service.CRM, builder.serviceForUrl("https://proxy.example.org/pushes"));
+        assertEquals(UrlBuilder.Service.CRM, builder.serviceForUrl("https://proxy.example.org/v1/users"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresEveryService() {
+        Map<UrlBuilder.Service, String> mapping = UrlBuilder.defaultMapping();
+        mapping.remove(UrlBuilder.Service.DDL);
+
+        new UrlBuilder(mapping);
+    }
+}